@@ -0,0 +1,209 @@
+package se.internetapplications.collections.functional.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.internetapplications.collections.functional.Do;
+import se.internetapplications.collections.functional.PreparedPipeline;
+import se.internetapplications.collections.functional.ReduceToStringBuilder;
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Throughput of every <code>Do</code> operation over different sizes and
+ * source types. Run with <code>-prof gc</code> to also report bytes
+ * allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoBenchmark {
+
+    @Param( { "10", "1000", "100000", "10000000" })
+    private int size;
+
+    @Param( { "ArrayList", "LinkedList", "HashSet", "array" })
+    private String source;
+
+    private String[] elements;
+
+    private Collection<String> collection;
+
+    private String[] removed;
+
+    private static final BooleanExpression<String> EVEN = new BooleanExpression<String>() {
+        public boolean predicate(final String element) {
+            return (element.hashCode() & 1) == 0;
+        }
+    };
+
+    private static final BooleanExpression<String> NEVER = new BooleanExpression<String>() {
+        public boolean predicate(final String element) {
+            return false;
+        }
+    };
+
+    private static final MapExpression<String, Integer> LENGTH = new MapExpression<String, Integer>() {
+        public Integer transform(final String element) {
+            return element.length();
+        }
+    };
+
+    private static final ReduceExpression<Integer, Integer> SUM = new ReduceExpression<Integer, Integer>() {
+        public Integer reduce(final Integer accumulatedValue,
+                final Integer element) {
+            return accumulatedValue + element;
+        }
+    };
+
+    private static final PreparedPipeline<String, Integer> PIPELINE = PreparedPipeline
+            .of(String.class).select(EVEN).reject(NEVER).mapTo(LENGTH);
+
+    private static final PreparedPipeline<String, Integer> COMPILED = PIPELINE
+            .compile();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.elements = new String[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.elements[i] = "element-" + (i % (this.size / 2 + 1));
+        }
+
+        List<String> list = new ArrayList<String>(this.size);
+        for (String element : this.elements) {
+            list.add(element);
+        }
+        if ("ArrayList".equals(this.source)) {
+            this.collection = list;
+        } else if ("LinkedList".equals(this.source)) {
+            this.collection = new LinkedList<String>(list);
+        } else if ("HashSet".equals(this.source)) {
+            this.collection = new HashSet<String>(list);
+        } else if ("array".equals(this.source)) {
+            this.collection = null;
+        } else {
+            throw new IllegalArgumentException("Unknown source " + this.source);
+        }
+
+        this.removed = new String[Math.min(10, this.size)];
+        for (int i = 0; i < this.removed.length; i++) {
+            this.removed[i] = this.elements[i * (this.size / this.removed.length)];
+        }
+    }
+
+    private Do<String, String> source() {
+        if (this.collection == null) {
+            return Do.withArray(this.elements);
+        }
+        return Do.with(this.collection);
+    }
+
+    @Benchmark
+    public Collection<String> select() {
+        return source().select(EVEN);
+    }
+
+    @Benchmark
+    public Collection<String> reject() {
+        return source().reject(EVEN);
+    }
+
+    @Benchmark
+    public String detect() {
+        return source().detect(NEVER);
+    }
+
+    @Benchmark
+    public Collection<Integer> mapTo() {
+        return source().mapTo(LENGTH);
+    }
+
+    @Benchmark
+    public Collection<Integer> collect() {
+        return source().mapTo(Integer.class).collect(LENGTH);
+    }
+
+    @Benchmark
+    public Integer reduce() {
+        return source().mapTo(LENGTH).withInitialValue(0).reduce(SUM);
+    }
+
+    @Benchmark
+    public Collection<String> unique() {
+        return source().unique();
+    }
+
+    @Benchmark
+    public Collection<String> uniqueBy() {
+        return source().uniqueBy(LENGTH);
+    }
+
+    @Benchmark
+    public Collection<String> rejectElement() {
+        return source().rejectElement(this.removed);
+    }
+
+    @Benchmark
+    public Collection<String> rejectAllElements() {
+        return source().rejectAllElements(this.removed);
+    }
+
+    @Benchmark
+    public Collection<String> injectElement() {
+        return source().injectElement(this.removed);
+    }
+
+    @Benchmark
+    public List<String> toList() {
+        return source().toList();
+    }
+
+    @Benchmark
+    public Set<String> toSet() {
+        return source().toSet();
+    }
+
+    @Benchmark
+    public StringBuilder reduceToStringBuilder() {
+        return source().mapTo(StringBuilder.class).withInitialValue(
+                new StringBuilder()).reduce(new ReduceToStringBuilder(","));
+    }
+
+    @Benchmark
+    public List<Integer> lazyChain() {
+        return source().lazy().select(EVEN).reject(NEVER).mapTo(LENGTH)
+                .toList();
+    }
+
+    @Benchmark
+    public Collection<Integer> preparedChain() {
+        return PIPELINE.apply(source());
+    }
+
+    @Benchmark
+    public Collection<Integer> compiledChain() {
+        return COMPILED.apply(source());
+    }
+}
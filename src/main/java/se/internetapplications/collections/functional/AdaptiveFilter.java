@@ -0,0 +1,176 @@
+package se.internetapplications.collections.functional;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+
+/**
+ * A group of consecutive select and reject operations whose evaluation order
+ * is chosen at runtime. Every <code>SAMPLE_INTERVAL</code>th element is run
+ * through all filters while measuring the time and outcome of each, and the
+ * filters are periodically reordered so that those which are cheap and
+ * reject many elements run first.
+ * <p>
+ * Filters are ranked by their average cost divided by their rejection rate,
+ * which minimizes the expected cost per element when the filters are
+ * independent. Older measurements are decayed at each reordering so the
+ * order follows changes in the data.
+ * </p>
+ * <p>
+ * The statistics are shared by all traversals and threads using the stage.
+ * Updates are not synchronized since lost updates only make the estimates
+ * slightly less accurate.
+ * </p>
+ * 
+ * @see Do#reorderFilters()
+ */
+final class AdaptiveFilter extends Stage {
+
+    /**
+     * Every element whose sequence number is a multiple of this is sampled.
+     */
+    static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * Number of samples between reorderings.
+     */
+    static final int REORDER_INTERVAL = 16;
+
+    /**
+     * Rejection rate assumed for filters that have not rejected any sampled
+     * element, so they are ranked by cost among themselves.
+     */
+    private static final double MINIMUM_REJECTION_RATE = 1e-6;
+
+    /**
+     * Cost in nanoseconds assumed for filters too cheap for the clock to
+     * measure, so they are ranked by rejection rate among themselves.
+     */
+    private static final double MINIMUM_COST = 1;
+
+    private final BooleanExpression<Object>[] expressions;
+
+    /**
+     * Whether each filter keeps elements matching its expression, i.e. is a
+     * select rather than a reject.
+     */
+    private final boolean[] keep;
+
+    /**
+     * Indexes of the filters in evaluation order.
+     */
+    private volatile int[] order;
+
+    private final double[] nanos;
+
+    private final double[] rejected;
+
+    private double samples;
+
+    private int sequence;
+
+    private AdaptiveFilter(final BooleanExpression<Object>[] expressions,
+            final boolean[] keep, final int[] order) {
+        this.expressions = expressions;
+        this.keep = keep;
+        this.order = order;
+        this.nanos = new double[expressions.length];
+        this.rejected = new double[expressions.length];
+    }
+
+    @SuppressWarnings( { "unchecked", "rawtypes" })
+    static <E> AdaptiveFilter of(final BooleanExpression<E> expression,
+            final boolean keep) {
+        return new AdaptiveFilter(
+                new BooleanExpression[] { (BooleanExpression<Object>) expression },
+                new boolean[] { keep }, new int[] { 0 });
+    }
+
+    /**
+     * @return a new filter group with <code>expression</code> added last.
+     *         The current order of the existing filters is kept.
+     */
+    @SuppressWarnings("unchecked")
+    <E> AdaptiveFilter and(final BooleanExpression<E> expression,
+            final boolean keep) {
+        int length = this.expressions.length;
+        BooleanExpression<Object>[] expressions = Arrays.copyOf(
+                this.expressions, length + 1);
+        expressions[length] = (BooleanExpression<Object>) expression;
+        boolean[] keeps = Arrays.copyOf(this.keep, length + 1);
+        keeps[length] = keep;
+        int[] order = Arrays.copyOf(this.order, length + 1);
+        order[length] = length;
+        return new AdaptiveFilter(expressions, keeps, order);
+    }
+
+    Object apply(final Object element) {
+        if (++this.sequence % SAMPLE_INTERVAL == 0) {
+            return sample(element);
+        }
+        int[] order = this.order;
+        for (int i = 0; i < order.length; i++) {
+            int filter = order[i];
+            if (this.expressions[filter].predicate(element) != this.keep[filter]) {
+                return REJECTED;
+            }
+        }
+        return element;
+    }
+
+    /**
+     * @return the indexes of the filters in their current evaluation order.
+     */
+    int[] order() {
+        return this.order.clone();
+    }
+
+    /**
+     * Runs <code>element</code> through every filter, measuring each.
+     */
+    private Object sample(final Object element) {
+        boolean passed = true;
+        for (int filter = 0; filter < this.expressions.length; filter++) {
+            long start = System.nanoTime();
+            boolean match = this.expressions[filter].predicate(element);
+            this.nanos[filter] += System.nanoTime() - start;
+            if (match != this.keep[filter]) {
+                this.rejected[filter]++;
+                passed = false;
+            }
+        }
+        if (++this.samples >= REORDER_INTERVAL) {
+            reorder();
+        }
+        return passed ? element : REJECTED;
+    }
+
+    private synchronized void reorder() {
+        int length = this.expressions.length;
+        final double[] rank = new double[length];
+        Integer[] order = new Integer[length];
+        for (int filter = 0; filter < length; filter++) {
+            double rejectionRate = Math.max(MINIMUM_REJECTION_RATE,
+                    this.rejected[filter] / this.samples);
+            double cost = Math.max(MINIMUM_COST, this.nanos[filter]
+                    / this.samples);
+            rank[filter] = cost / rejectionRate;
+            order[filter] = filter;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer left, final Integer right) {
+                return Double.compare(rank[left], rank[right]);
+            }
+        });
+
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = order[i];
+            this.nanos[i] /= 2;
+            this.rejected[i] /= 2;
+        }
+        this.samples /= 2;
+        this.order = result;
+    }
+}
@@ -0,0 +1,41 @@
+package se.internetapplications.collections.functional;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Fixed size list view of an array, like <code>Arrays.asList</code>, that
+ * gives <code>Do</code> direct access to the array so operations can loop
+ * over it without going through <code>get</code> or an iterator.
+ */
+final class ArrayCollection<E> extends AbstractList<E> implements
+        RandomAccess {
+
+    final E[] array;
+
+    ArrayCollection(final E[] array) {
+        if (array == null) {
+            throw new NullPointerException();
+        }
+        this.array = array;
+    }
+
+    public E get(final int index) {
+        return this.array[index];
+    }
+
+    public E set(final int index, final E element) {
+        E old = this.array[index];
+        this.array[index] = element;
+        return old;
+    }
+
+    public int size() {
+        return this.array.length;
+    }
+
+    public Object[] toArray() {
+        return Arrays.copyOf(this.array, this.array.length, Object[].class);
+    }
+}
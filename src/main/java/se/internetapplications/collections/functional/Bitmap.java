@@ -0,0 +1,380 @@
+package se.internetapplications.collections.functional;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of non-negative <code>int</code> positions in the
+ * style of Roaring bitmaps. Positions are grouped by their upper 16 bits into
+ * containers. Sparse containers are sorted <code>char</code> arrays, dense
+ * ones are 65536-bit bitmaps, so memory stays proportional to the number of
+ * positions for sparse sets and to one bit per position for dense ones.
+ */
+final class Bitmap {
+
+    /**
+     * Containers with more values than this are stored as bitmaps.
+     */
+    static final int ARRAY_LIMIT = 4096;
+
+    private static final int WORDS = 1 << 10;
+
+    static final Bitmap EMPTY = new Bitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+
+    private final Container[] containers;
+
+    private final int cardinality;
+
+    private Bitmap(final char[] keys, final Container[] containers,
+            final int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    int cardinality() {
+        return this.cardinality;
+    }
+
+    boolean contains(final int position) {
+        int index = Arrays.binarySearch(this.keys, (char) (position >>> 16));
+        return index >= 0
+                && this.containers[index].contains((char) position);
+    }
+
+    /**
+     * @return the smallest position in the set that is not less than
+     *         <code>from</code>, or <code>-1</code> if there is none.
+     */
+    int next(final int from) {
+        if (from < 0) {
+            return next(0);
+        }
+        int index = Arrays.binarySearch(this.keys, (char) (from >>> 16));
+        int low = from & 0xFFFF;
+        if (index < 0) {
+            index = -index - 1;
+            low = 0;
+        }
+        for (; index < this.keys.length; index++) {
+            int next = this.containers[index].next(low);
+            if (next >= 0) {
+                return this.keys[index] << 16 | next;
+            }
+            low = 0;
+        }
+        return -1;
+    }
+
+    Bitmap and(final Bitmap other) {
+        Combiner result = new Combiner(Math.min(this.keys.length,
+                other.keys.length));
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length && j < other.keys.length) {
+            if (this.keys[i] < other.keys[j]) {
+                i++;
+            } else if (this.keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.add(this.keys[i], this.containers[i]
+                        .and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    Bitmap or(final Bitmap other) {
+        Combiner result = new Combiner(this.keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length || j < other.keys.length) {
+            if (j == other.keys.length
+                    || (i < this.keys.length && this.keys[i] < other.keys[j])) {
+                result.add(this.keys[i], this.containers[i]);
+                i++;
+            } else if (i == this.keys.length || this.keys[i] > other.keys[j]) {
+                result.add(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                result.add(this.keys[i], this.containers[i]
+                        .or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    Bitmap andNot(final Bitmap other) {
+        Combiner result = new Combiner(this.keys.length);
+        int j = 0;
+        for (int i = 0; i < this.keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < this.keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == this.keys[i]) {
+                result.add(this.keys[i], this.containers[i]
+                        .andNot(other.containers[j]));
+            } else {
+                result.add(this.keys[i], this.containers[i]);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Builds a bitmap from positions added in increasing order.
+     */
+    static final class Builder {
+        private final Combiner combiner = new Combiner(4);
+
+        private char key;
+
+        private char[] values = new char[16];
+
+        private int count;
+
+        void add(final int position) {
+            char key = (char) (position >>> 16);
+            if (key != this.key && this.count > 0) {
+                flush();
+            }
+            this.key = key;
+            if (this.count == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.count * 2);
+            }
+            this.values[this.count++] = (char) position;
+        }
+
+        Bitmap build() {
+            flush();
+            return this.combiner.build();
+        }
+
+        private void flush() {
+            if (this.count > 0) {
+                this.combiner.add(this.key, Container.of(Arrays.copyOf(
+                        this.values, this.count)));
+                this.count = 0;
+            }
+        }
+    }
+
+    /**
+     * Collects containers in key order, skipping empty ones.
+     */
+    private static final class Combiner {
+        private char[] keys;
+
+        private Container[] containers;
+
+        private int length;
+
+        private int cardinality;
+
+        Combiner(final int capacity) {
+            this.keys = new char[Math.max(1, capacity)];
+            this.containers = new Container[Math.max(1, capacity)];
+        }
+
+        void add(final char key, final Container container) {
+            if (container.cardinality == 0) {
+                return;
+            }
+            if (this.length == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.length * 2);
+                this.containers = Arrays.copyOf(this.containers,
+                        this.length * 2);
+            }
+            this.keys[this.length] = key;
+            this.containers[this.length++] = container;
+            this.cardinality += container.cardinality;
+        }
+
+        Bitmap build() {
+            if (this.length == 0) {
+                return EMPTY;
+            }
+            return new Bitmap(Arrays.copyOf(this.keys, this.length), Arrays
+                    .copyOf(this.containers, this.length), this.cardinality);
+        }
+    }
+
+    /**
+     * The lower 16 bits of the positions sharing the same upper 16 bits.
+     * Exactly one of <code>values</code> and <code>words</code> is set.
+     */
+    private static final class Container {
+        /**
+         * Sorted values of a sparse container.
+         */
+        private final char[] values;
+
+        /**
+         * Bits of a dense container.
+         */
+        private final long[] words;
+
+        private final int cardinality;
+
+        private Container(final char[] values, final long[] words,
+                final int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * @return a container of sorted <code>values</code>, stored in
+         *         the cheaper of the two representations.
+         */
+        static Container of(final char[] values) {
+            if (values.length <= ARRAY_LIMIT) {
+                return new Container(values, null, values.length);
+            }
+            long[] words = new long[WORDS];
+            for (int i = 0; i < values.length; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new Container(null, words, values.length);
+        }
+
+        /**
+         * @return a container of the set bits in <code>words</code>, stored
+         *         in the cheaper of the two representations.
+         */
+        static Container of(final long[] words) {
+            int cardinality = 0;
+            for (int i = 0; i < WORDS; i++) {
+                cardinality += Long.bitCount(words[i]);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                return new Container(null, words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[count++] = (char) (i << 6 | Long
+                            .numberOfTrailingZeros(word));
+                }
+            }
+            return new Container(values, null, cardinality);
+        }
+
+        boolean contains(final char value) {
+            if (this.words != null) {
+                return (this.words[value >>> 6] & 1L << value) != 0;
+            }
+            return Arrays.binarySearch(this.values, value) >= 0;
+        }
+
+        int next(final int from) {
+            if (this.words != null) {
+                int index = from >>> 6;
+                if (index >= WORDS) {
+                    return -1;
+                }
+                long word = this.words[index] & -1L << from;
+                while (word == 0) {
+                    if (++index == WORDS) {
+                        return -1;
+                    }
+                    word = this.words[index];
+                }
+                return index << 6 | Long.numberOfTrailingZeros(word);
+            }
+            int index = Arrays.binarySearch(this.values, (char) from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < this.values.length ? this.values[index] : -1;
+        }
+
+        Container and(final Container other) {
+            if (this.words != null && other.words != null) {
+                long[] words = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] = this.words[i] & other.words[i];
+                }
+                return of(words);
+            }
+            Container sparse = this.words == null ? this : other;
+            Container dense = sparse == this ? other : this;
+            char[] values = new char[sparse.cardinality];
+            int count = 0;
+            for (int i = 0; i < sparse.cardinality; i++) {
+                if (dense.contains(sparse.values[i])) {
+                    values[count++] = sparse.values[i];
+                }
+            }
+            return new Container(Arrays.copyOf(values, count), null, count);
+        }
+
+        Container or(final Container other) {
+            if (this.words == null && other.words == null) {
+                char[] values = new char[this.cardinality + other.cardinality];
+                int count = 0;
+                int i = 0;
+                int j = 0;
+                while (i < this.cardinality || j < other.cardinality) {
+                    if (j == other.cardinality
+                            || (i < this.cardinality && this.values[i] < other.values[j])) {
+                        values[count++] = this.values[i++];
+                    } else if (i == this.cardinality
+                            || this.values[i] > other.values[j]) {
+                        values[count++] = other.values[j++];
+                    } else {
+                        values[count++] = this.values[i++];
+                        j++;
+                    }
+                }
+                return of(Arrays.copyOf(values, count));
+            }
+            long[] words = new long[WORDS];
+            this.orInto(words);
+            other.orInto(words);
+            return of(words);
+        }
+
+        Container andNot(final Container other) {
+            if (this.words == null) {
+                char[] values = new char[this.cardinality];
+                int count = 0;
+                for (int i = 0; i < this.cardinality; i++) {
+                    if (!other.contains(this.values[i])) {
+                        values[count++] = this.values[i];
+                    }
+                }
+                return new Container(Arrays.copyOf(values, count), null, count);
+            }
+            long[] words = this.words.clone();
+            if (other.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] &= ~other.words[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    words[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+                }
+            }
+            return of(words);
+        }
+
+        private void orInto(final long[] words) {
+            if (this.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] |= this.words[i];
+                }
+            } else {
+                for (int i = 0; i < this.cardinality; i++) {
+                    words[this.values[i] >>> 6] |= 1L << this.values[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import se.internetapplications.collections.functional.Do.CombineExpression;
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Keeps the <code>limit</code> smallest elements offered to it, using a
+ * max-heap of at most <code>limit</code> elements. Offering n elements takes
+ * O(n log limit) time.
+ * <p>
+ * Also serves as the expressions for a parallel reduce into bounded heaps,
+ * where each chunk fills its own heap and the heaps are then merged.
+ * </p>
+ */
+final class BoundedHeap<E> {
+
+    private final int limit;
+
+    private final Comparator<? super E> comparator;
+
+    /**
+     * Largest kept element at the head.
+     */
+    private final PriorityQueue<E> heap;
+
+    BoundedHeap(final int limit, final Comparator<? super E> comparator) {
+        this.limit = limit;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<E>(Math.max(1, Math.min(limit, 1024)),
+                Collections.reverseOrder(comparator));
+    }
+
+    void offer(final E element) {
+        if (this.heap.size() < this.limit) {
+            this.heap.add(element);
+        } else if (this.limit > 0
+                && this.comparator.compare(element, this.heap.peek()) < 0) {
+            this.heap.poll();
+            this.heap.add(element);
+        }
+    }
+
+    void offerAll(final BoundedHeap<E> other) {
+        for (E element : other.heap) {
+            offer(element);
+        }
+    }
+
+    /**
+     * @return the kept elements, smallest first.
+     */
+    List<E> toSortedList() {
+        List<E> result = new ArrayList<E>(this.heap);
+        Collections.sort(result, this.comparator);
+        return result;
+    }
+
+    static <E> Expressions<E> expressions(final int limit,
+            final Comparator<? super E> comparator) {
+        return new Expressions<E>(limit, comparator);
+    }
+
+    static final class Expressions<E> implements
+            InitialValueExpression<BoundedHeap<E>>,
+            ReduceExpression<E, BoundedHeap<E>>,
+            CombineExpression<BoundedHeap<E>> {
+
+        private final int limit;
+
+        private final Comparator<? super E> comparator;
+
+        Expressions(final int limit, final Comparator<? super E> comparator) {
+            this.limit = limit;
+            this.comparator = comparator;
+        }
+
+        public BoundedHeap<E> initialValue() {
+            return new BoundedHeap<E>(this.limit, this.comparator);
+        }
+
+        public BoundedHeap<E> reduce(final BoundedHeap<E> heap, final E element) {
+            heap.offer(element);
+            return heap;
+        }
+
+        public BoundedHeap<E> combine(final BoundedHeap<E> left,
+                final BoundedHeap<E> right) {
+            left.offerAll(right);
+            return left;
+        }
+    }
+}
@@ -3,11 +3,19 @@ package se.internetapplications.collections.functional;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Utility class for dealing with collections in a functional way.
@@ -28,15 +36,102 @@ import java.util.Set;
  * <li><code>Do.with(collection).select(expression)</code></li>
  * <li><code>Do.with(collection).reject(expression)</code></li>
  * <li><code>Do.with(collection).detect(expression)</code></li>
+ * <li><code>Do.with(collection).limit(n)</code></li>
+ * <li><code>Do.with(collection).takeWhile(expression)</code></li>
+ * <li><code>Do.with(collection).dropWhile(expression)</code></li>
+ * <li><code>Do.with(collection).anyMatch(expression)</code></li>
+ * <li><code>Do.with(collection).allMatch(expression)</code></li>
+ * <li><code>Do.with(collection).noneMatch(expression)</code></li>
+ * <li><code>Do.with(collection).unique()</code></li>
+ * <li><code>Do.with(collection).uniqueBy(expression)</code></li>
+ * <li><code>Do.with(collection).partition(expression)</code></li>
+ * <li><code>Do.with(collection).partitionBy(expression)</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Selection operations, keeping positions in a bitmap instead of copying:
+ * <ul>
+ * <li><code>do.where(expression).and(do.where(other)).andNot(do.whereNot(third))</code></li>
+ * <li><code>do.where(expression).materialize()</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Group operations:
+ * <ul>
+ * <li><code>Do.with(collection).groupBy(key).toMap()</code></li>
+ * <li><code>Do.with(collection).groupBy(key).withInitialValue(start).reduce(expression)</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Ordering operations:
+ * <ul>
+ * <li><code>Do.with(collection).sorted(comparator)</code></li>
+ * <li><code>Do.with(collection).topK(n, comparator)</code></li>
+ * <li><code>Do.with(collection).bottomK(n, comparator)</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Index operations:
+ * <ul>
+ * <li><code>do.hashIndex(key).detect(value)</code></li>
+ * <li><code>do.sortedIndex(key).select(from, to)</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Sorted source operations:
+ * <ul>
+ * <li><code>Do.with(events).assumeSortedBy(timestamp).select(from, to)</code></li>
+ * <li><code>Do.with(events).assumeSortedBy(timestamp).detectAbove(threshold)</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Join operations:
+ * <ul>
+ * <li><code>Do.with(orders).join(Do.with(customers), orderKey, customerKey)</code></li>
+ * <li><code>Do.with(orders).leftOuterJoin(Do.with(customers), orderKey, customerKey)</code></li>
+ * <li><code>Do.with(orders).semiJoin(Do.with(customers), orderKey, customerKey)</code></li>
+ * <li><code>Do.with(orders).antiJoin(Do.with(customers), orderKey, customerKey)</code></li>
  * </ul>
  * </p>
  * 
  * <p>Reduce operation:
  * <ul>
  * <li><code>Do.with(collection).withInitialValue(start).reduce(expression)</code></li>
+ * <li><code>Do.with(collection).parallel().withInitialValue(identity).reduce(expression, combiner)</code></li>
+ * <li><code>Do.with(collection).parallel().reduce(initialValue, expression, combiner)</code></li>
  * </ul>
  * </p>
  * 
+ * <p>Lazy operations:
+ * <ul>
+ * <li><code>Do.with(collection).lazy().select(expression).mapTo(expression).toList()</code></li>
+ * <li><code>Do.with(collection).reorderFilters().select(expression).reject(expression).toList()</code></li>
+ * </ul>
+ * In lazy mode <code>select</code>, <code>reject</code>, <code>mapTo</code>
+ * and <code>collect</code> only record the operation. All recorded
+ * operations are run in a single pass over the collection when it is
+ * iterated, e.g. by <code>reduce</code>, <code>detect</code>,
+ * <code>toList</code>, <code>toSet</code> or <code>iterator</code>.
+ * </p>
+ * 
+ * <p>Prepared pipelines, defined once and applied to many sources:
+ * <ul>
+ * <li><code>PreparedPipeline.of(Source.class).select(expression).mapTo(expression).apply(collection)</code></li>
+ * <li><code>PreparedPipeline.of(Source.class).select(expression).mapTo(expression).compile().apply(collection)</code></li>
+ * </ul>
+ * </p>
+ * 
+ * <p>Parallel operations:
+ * <ul>
+ * <li><code>Do.with(list).parallel().select(expression)</code></li>
+ * <li><code>Do.with(list).parallel().lazy().select(expression).mapTo(expression).toList()</code></li>
+ * </ul>
+ * In parallel mode large random access lists and arrays are split into
+ * chunks which are processed concurrently on a <code>ForkJoinPool</code>.
+ * Results keep the encounter order of the source. Expressions must be
+ * thread-safe.
+ * </p>
+ * 
  * @author Jan-Mikael Bergqvist
  */
 public class Do<E, R> implements Collection<E> {
@@ -51,19 +146,212 @@ public class Do<E, R> implements Collection<E> {
      */
     private R reduceResult;
 
+    /**
+     * Number of elements filtered before the size of the result is
+     * estimated.
+     */
+    private static final int SAMPLE_SIZE = 64;
+
+    /**
+     * Whether select, reject and map operations are deferred until the
+     * collection is iterated.
+     */
+    private boolean lazy;
+
+    /**
+     * Pool to run operations on in parallel mode, <code>null</code> when
+     * running sequentially.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Whether consecutive lazy select and reject operations may be reordered
+     * at runtime.
+     */
+    private boolean reorderFilters;
+
+    /**
+     * Secondary indexes kept up to date by changes made through this
+     * <code>Do</code>, <code>null</code> until the first one is created.
+     */
+    private List<Index<?, E>> indexes;
+
     protected Do(final Collection<E> collection) {
         this.collection = collection;
     }
 
     /**
-     * Sets collection to use in operations.
+     * Estimates the capacity needed for a filtered result from the share of
+     * the first <code>SAMPLE_SIZE</code> elements that were kept, with some
+     * headroom so a slightly higher rate later on does not cause a copy.
+     */
+    private static int estimateCapacity(final int selected, final int size) {
+        long estimate = (long) selected * size / SAMPLE_SIZE;
+        return (int) Math.min(size, estimate + estimate / 8 + SAMPLE_SIZE);
+    }
+
+    /**
+     * @return a new <code>Do</code> on the given collection, using the same
+     *         mode of operation as this one.
+     */
+    private <F, S> Do<F, S> derive(final Collection<F> result) {
+        Do<F, S> derived = new Do<F, S>(result);
+        derived.lazy = this.lazy;
+        derived.pool = this.pool;
+        derived.reorderFilters = this.reorderFilters;
+        return derived;
+    }
+
+    /*
+     * Sequential loops. Arrays and random access lists are traversed by
+     * index, other collections by iterator.
+     */
+
+    /**
+     * @return elements for which the expression evaluates to
+     *         <code>keep</code>.
+     */
+    private ArrayList<E> filter(final BooleanExpression<E> expression,
+            final boolean keep) {
+        int size = this.collection.size();
+        ArrayList<E> result = new ArrayList<E>(Math.min(size, SAMPLE_SIZE));
+        if (this.collection instanceof ArrayCollection<?>) {
+            E[] array = ((ArrayCollection<E>) this.collection).array;
+            for (int i = 0; i < array.length; i++) {
+                if (i == SAMPLE_SIZE) {
+                    result.ensureCapacity(estimateCapacity(result.size(), size));
+                }
+                if (expression.predicate(array[i]) == keep) {
+                    result.add(array[i]);
+                }
+            }
+        } else if (this.collection instanceof List<?>
+                && this.collection instanceof RandomAccess) {
+            List<E> list = (List<E>) this.collection;
+            for (int i = 0; i < size; i++) {
+                if (i == SAMPLE_SIZE) {
+                    result.ensureCapacity(estimateCapacity(result.size(), size));
+                }
+                E element = list.get(i);
+                if (expression.predicate(element) == keep) {
+                    result.add(element);
+                }
+            }
+        } else {
+            int i = 0;
+            for (E element : this.collection) {
+                if (i++ == SAMPLE_SIZE) {
+                    result.ensureCapacity(estimateCapacity(result.size(), size));
+                }
+                if (expression.predicate(element) == keep) {
+                    result.add(element);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return elements transformed by the expression, except
+     *         <code>null</code> results.
+     */
+    private <S> ArrayList<S> transform(final MapExpression<E, S> expression) {
+        int size = this.collection.size();
+        ArrayList<S> result = new ArrayList<S>(size);
+        if (this.collection instanceof ArrayCollection<?>) {
+            E[] array = ((ArrayCollection<E>) this.collection).array;
+            for (int i = 0; i < array.length; i++) {
+                S s = expression.transform(array[i]);
+                if (s != null) {
+                    result.add(s);
+                }
+            }
+        } else if (this.collection instanceof List<?>
+                && this.collection instanceof RandomAccess) {
+            List<E> list = (List<E>) this.collection;
+            for (int i = 0; i < size; i++) {
+                S s = expression.transform(list.get(i));
+                if (s != null) {
+                    result.add(s);
+                }
+            }
+        } else {
+            for (E element : this.collection) {
+                S s = expression.transform(element);
+                if (s != null) {
+                    result.add(s);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the expression evaluates to
+     *         <code>match</code> for any element.
+     */
+    private boolean exists(final BooleanExpression<E> expression,
+            final boolean match) {
+        if (this.collection instanceof ArrayCollection<?>) {
+            E[] array = ((ArrayCollection<E>) this.collection).array;
+            for (int i = 0; i < array.length; i++) {
+                if (expression.predicate(array[i]) == match) {
+                    return true;
+                }
+            }
+        } else if (this.collection instanceof List<?>
+                && this.collection instanceof RandomAccess) {
+            List<E> list = (List<E>) this.collection;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                if (expression.predicate(list.get(i)) == match) {
+                    return true;
+                }
+            }
+        } else {
+            for (E element : this.collection) {
+                if (expression.predicate(element) == match) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static <E, S> S fold(final Collection<E> source, final S start,
+            final ReduceExpression<E, S> expr) {
+        S result = start;
+        if (source instanceof ArrayCollection<?>) {
+            E[] array = ((ArrayCollection<E>) source).array;
+            for (int i = 0; i < array.length; i++) {
+                result = expr.reduce(result, array[i]);
+            }
+        } else if (source instanceof List<?> && source instanceof RandomAccess) {
+            List<E> list = (List<E>) source;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                result = expr.reduce(result, list.get(i));
+            }
+        } else {
+            for (E element : source) {
+                result = expr.reduce(result, element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets collection to use in operations. The array is used directly, not
+     * copied.
      */
     public static <F> Do<F, F> withArray(final F... f) {
-        return withCollection(Arrays.asList(f));
+        return withCollection(new ArrayCollection<F>(f));
     }
 
     /**
      * Sets collection to use in operations.
+     * <p>
+     * Random access lists are traversed by index, which avoids creating an
+     * iterator per operation.
+     * </p>
      */
     public static <F> Do<F, F> withCollection(final Collection<F> collection) {
         return new Do<F, F>(collection);
@@ -87,6 +375,35 @@ public class Do<E, R> implements Collection<E> {
         return withArray(f);
     }
 
+    /**
+     * Sets values to use in operations on <code>int</code>s, without boxing.
+     * 
+     * @see IntDo
+     */
+    public static IntDo withInts(final int... values) {
+        return IntDo.with(values);
+    }
+
+    /**
+     * Sets values to use in operations on <code>long</code>s, without
+     * boxing.
+     * 
+     * @see LongDo
+     */
+    public static LongDo withLongs(final long... values) {
+        return LongDo.with(values);
+    }
+
+    /**
+     * Sets values to use in operations on <code>double</code>s, without
+     * boxing.
+     * 
+     * @see DoubleDo
+     */
+    public static DoubleDo withDoubles(final double... values) {
+        return DoubleDo.with(values);
+    }
+
     /**
      * Sets target type for operations.
      * 
@@ -94,7 +411,118 @@ public class Do<E, R> implements Collection<E> {
      *            target type
      */
     public <S> Do<E, S> mapTo(final Class<S> target) {
-        return new Do<E, S>(collection);
+        return derive(this.collection);
+    }
+
+    /**
+     * Switches to lazy mode. Subsequent select, reject and map operations are
+     * not evaluated until the result is iterated, at which point all of them
+     * are run in a single pass without intermediate collections.
+     * <p>
+     * Note that the result is re-evaluated every time it is iterated. Use
+     * <code>eager()</code> to evaluate it once.
+     * </p>
+     * 
+     * @see Do#eager()
+     */
+    public Do<E, R> lazy() {
+        Do<E, R> result = derive(this.collection);
+        result.lazy = true;
+        result.reduceResult = this.reduceResult;
+        return result;
+    }
+
+    /**
+     * Switches to lazy mode and lets consecutive select and reject operations
+     * run in the order that turns out to be cheapest. While the collection is
+     * iterated the cost and rejection rate of each filter are sampled, and
+     * filters which are cheap and reject many elements are moved first.
+     * <p>
+     * Only use this when the filters are independent of each other: each
+     * expression must accept any element of the source, not only those that
+     * passed the filters declared before it, and must not have side effects.
+     * </p>
+     * 
+     * @see Do#lazy()
+     */
+    public Do<E, R> reorderFilters() {
+        Do<E, R> result = lazy();
+        result.reorderFilters = true;
+        return result;
+    }
+
+    /**
+     * Switches back to eager mode, evaluating any pending lazy operations.
+     */
+    public Do<E, R> eager() {
+        Do<E, R> result = derive(this.toList());
+        result.lazy = false;
+        result.reduceResult = this.reduceResult;
+        return result;
+    }
+
+    /**
+     * Trims the capacity of the collection to its size if it is an
+     * <code>ArrayList</code>, as returned by eager select, reject and map
+     * operations. Use on results that are kept around for a long time.
+     */
+    public Do<E, R> trimToSize() {
+        if (this.collection instanceof ArrayList<?>) {
+            ((ArrayList<E>) this.collection).trimToSize();
+        }
+        return this;
+    }
+
+    /**
+     * Copies the collection into a {@link PersistentVector}, unless it
+     * already is one. <code>injectElement</code> and
+     * <code>rejectElement</code> on a persistent collection return new
+     * persistent versions, leaving this one untouched for concurrent readers.
+     * Appending shares structure with the original. Methods that modify the
+     * collection in place, like <code>add</code>, are not supported.
+     */
+    public Do<E, R> persistent() {
+        Do<E, R> result = derive(PersistentVector.of(this.materialized()));
+        result.reduceResult = this.reduceResult;
+        return result;
+    }
+
+    /**
+     * Switches to parallel mode using the common <code>ForkJoinPool</code>.
+     * 
+     * @see Do#parallel(ForkJoinPool)
+     */
+    public Do<E, R> parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Switches to parallel mode. Select, reject and map operations on random
+     * access lists and arrays are split into chunks and run on the given
+     * pool. Other sources, and collections too small to benefit, are still
+     * processed sequentially.
+     * 
+     * @param pool
+     *            pool to run on
+     */
+    public Do<E, R> parallel(final ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool must not be null");
+        }
+        Do<E, R> result = derive(this.collection);
+        result.pool = pool;
+        result.reduceResult = this.reduceResult;
+        return result;
+    }
+
+    /**
+     * Switches back to sequential processing.
+     */
+    public Do<E, R> sequential() {
+        Do<E, R> result = derive(this.collection);
+        result.pool = null;
+        result.reduceResult = this.reduceResult;
+        return result;
     }
 
     /**
@@ -102,15 +530,17 @@ public class Do<E, R> implements Collection<E> {
      *         expression.
      */
     public Do<R, R> collect(final MapExpression<E, R> expression) {
-        Collection<R> result = new ArrayList<R>();
-
-        for (E element : this.collection) {
-            R r = expression.transform(element);
-            if (r != null) {
-                result.add(r);
-            }
+        if (this.lazy) {
+            return derive(LazyCollection.<R> append(this.collection,
+                    Stage.map(expression)));
         }
-        return new Do<R, R>(result);
+        if (Parallel.supports(this.collection, this.pool)) {
+            return derive(Parallel.<R> apply(this.pool,
+                    (List<?>) this.collection, new Stage[] { Stage
+                            .map(expression) }));
+        }
+
+        return derive(this.transform(expression));
     }
 
     /**
@@ -118,15 +548,17 @@ public class Do<E, R> implements Collection<E> {
      *         expression.
      */
     public <S> Do<S, S> mapTo(final MapExpression<E, S> expression) {
-        Collection<S> result = new ArrayList<S>();
-
-        for (E element : this.collection) {
-            S s = expression.transform(element);
-            if (s != null) {
-                result.add(s);
-            }
+        if (this.lazy) {
+            return derive(LazyCollection.<S> append(this.collection,
+                    Stage.map(expression)));
         }
-        return new Do<S, S>(result);
+        if (Parallel.supports(this.collection, this.pool)) {
+            return derive(Parallel.<S> apply(this.pool,
+                    (List<?>) this.collection, new Stage[] { Stage
+                            .map(expression) }));
+        }
+
+        return derive(this.transform(expression));
     }
     
     /**
@@ -140,13 +572,21 @@ public class Do<E, R> implements Collection<E> {
      * @return a new collection containing all elements matching the expression.
      */
     public Do<E, E> select(final BooleanExpression<E> expression) {
-        Collection<E> result = new ArrayList<E>();
-        for (E element : this.collection) {
-            if (expression.predicate(element)) {
-                result.add(element);
+        if (this.lazy) {
+            if (this.reorderFilters) {
+                return derive(LazyCollection.filter(this.collection,
+                        expression, true));
             }
+            return derive(LazyCollection.<E> append(this.collection,
+                    Stage.select(expression)));
         }
-        return new Do<E, E>(result);
+        if (Parallel.supports(this.collection, this.pool)) {
+            return derive(Parallel.<E> apply(this.pool,
+                    (List<?>) this.collection, new Stage[] { Stage
+                            .select(expression) }));
+        }
+
+        return derive(this.filter(expression, true));
     }
 
     /**
@@ -154,53 +594,477 @@ public class Do<E, R> implements Collection<E> {
      *         matching expression could be found.
      */
     public E detect(final BooleanExpression<E> expression) {
-        for (E element : this.collection) {
-            if (expression.predicate(element)) {
-                return element;
+        if (this.collection instanceof ArrayCollection<?>) {
+            E[] array = ((ArrayCollection<E>) this.collection).array;
+            for (int i = 0; i < array.length; i++) {
+                if (expression.predicate(array[i])) {
+                    return array[i];
+                }
+            }
+        } else if (this.collection instanceof List<?>
+                && this.collection instanceof RandomAccess) {
+            List<E> list = (List<E>) this.collection;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                E element = list.get(i);
+                if (expression.predicate(element)) {
+                    return element;
+                }
+            }
+        } else {
+            for (E element : this.collection) {
+                if (expression.predicate(element)) {
+                    return element;
+                }
             }
         }
         return null;
     }
 
+    /**
+     * @return <code>true</code> if any element matches the expression. Stops
+     *         at the first match.
+     */
+    public boolean anyMatch(final BooleanExpression<E> expression) {
+        return exists(expression, true);
+    }
+
+    /**
+     * @return <code>true</code> if all elements match the expression, or if
+     *         the collection is empty. Stops at the first element not
+     *         matching.
+     */
+    public boolean allMatch(final BooleanExpression<E> expression) {
+        return !exists(expression, false);
+    }
+
+    /**
+     * @return <code>true</code> if no element matches the expression. Stops
+     *         at the first match.
+     */
+    public boolean noneMatch(final BooleanExpression<E> expression) {
+        return !exists(expression, true);
+    }
+
+    /**
+     * @return a new collection containing at most the first
+     *         <code>limit</code> elements. In lazy mode the traversal stops
+     *         as soon as <code>limit</code> elements have passed all
+     *         previous operations.
+     */
+    public Do<E, E> limit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: "
+                    + limit);
+        }
+        if (this.lazy) {
+            return derive(LazyCollection.<E> append(this.collection,
+                    Stage.limit(limit)));
+        }
+        if (this.collection instanceof List<?>) {
+            List<E> list = (List<E>) this.collection;
+            return derive(new ArrayList<E>(list.subList(0, Math.min(limit,
+                    list.size()))));
+        }
+        return derive(LazyCollection.<E> append(this.collection,
+                Stage.limit(limit)).drainTo(new ArrayList<E>()));
+    }
+
+    /**
+     * @return a new collection containing the elements before the first one
+     *         not matching the expression. Elements after it are not
+     *         evaluated.
+     */
+    public Do<E, E> takeWhile(final BooleanExpression<E> expression) {
+        Stage stage = Stage.takeWhile(expression);
+        if (this.lazy) {
+            return derive(LazyCollection.<E> append(this.collection, stage));
+        }
+        return derive(LazyCollection.<E> append(this.collection, stage)
+                .drainTo(new ArrayList<E>()));
+    }
+
+    /**
+     * @return a new collection containing the elements from the first one
+     *         not matching the expression. The expression is not evaluated
+     *         for any later elements.
+     */
+    public Do<E, E> dropWhile(final BooleanExpression<E> expression) {
+        Stage stage = Stage.dropWhile(expression);
+        if (this.lazy) {
+            return derive(LazyCollection.<E> append(this.collection, stage));
+        }
+        return derive(LazyCollection.<E> append(this.collection, stage)
+                .drainTo(new ArrayList<E>()));
+    }
+
     /**
      * @return new collection containing all elements except those matching the
      *         expression.
      */
     public Do<E, E> reject(final BooleanExpression<E> expression) {
-        Collection<E> result = new ArrayList<E>();
+        if (this.lazy) {
+            if (this.reorderFilters) {
+                return derive(LazyCollection.filter(this.collection,
+                        expression, false));
+            }
+            return derive(LazyCollection.<E> append(this.collection,
+                    Stage.reject(expression)));
+        }
+        if (Parallel.supports(this.collection, this.pool)) {
+            return derive(Parallel.<E> apply(this.pool,
+                    (List<?>) this.collection, new Stage[] { Stage
+                            .reject(expression) }));
+        }
+
+        return derive(this.filter(expression, false));
+    }
+
+    /**
+     * Selects the elements matching the expression without copying them. The
+     * result records the positions of the matching elements in a compressed
+     * bitmap and can be combined with other selections from the same
+     * <code>Do</code> using <code>and</code>, <code>or</code> and
+     * <code>andNot</code>.
+     * <p>
+     * Selections can only be combined if they are made over the same list.
+     * Collections that are not random access lists, and pending lazy
+     * operations, are copied into a new list on every call, so call
+     * <code>eager()</code> or <code>Do.with(toList())</code> first when
+     * combining selections from such a source.
+     * </p>
+     * 
+     * @see Selection
+     */
+    public Selection<E> where(final BooleanExpression<E> expression) {
+        return positions(expression, true);
+    }
+
+    /**
+     * Selects the elements not matching the expression without copying them.
+     * 
+     * @see Do#where(BooleanExpression)
+     */
+    public Selection<E> whereNot(final BooleanExpression<E> expression) {
+        return positions(expression, false);
+    }
+
+    private Selection<E> positions(final BooleanExpression<E> expression,
+            final boolean keep) {
+        List<E> source = this.randomAccess();
+        Bitmap.Builder positions = new Bitmap.Builder();
+        if (source instanceof ArrayCollection<?>) {
+            E[] array = ((ArrayCollection<E>) source).array;
+            for (int i = 0; i < array.length; i++) {
+                if (expression.predicate(array[i]) == keep) {
+                    positions.add(i);
+                }
+            }
+        } else {
+            for (int i = 0, size = source.size(); i < size; i++) {
+                if (expression.predicate(source.get(i)) == keep) {
+                    positions.add(i);
+                }
+            }
+        }
+        return new Selection<E>(source, positions.build());
+    }
+
+    /**
+     * Splits the collection into elements matching and not matching the
+     * expression. Both halves are built in a single pass, evaluating the
+     * expression once per element.
+     */
+    public Partition<E> partition(final BooleanExpression<E> expression) {
+        List<E> selected = new ArrayList<E>();
+        List<E> rejected = new ArrayList<E>();
+        for (E element : this.collection) {
+            if (expression.predicate(element)) {
+                selected.add(element);
+            } else {
+                rejected.add(element);
+            }
+        }
+        Do<E, E> selectedDo = derive(selected);
+        Do<E, E> rejectedDo = derive(rejected);
+        return new Partition<E>(selectedDo, rejectedDo);
+    }
 
+    /**
+     * Splits the collection into groups of elements with equal keys in a
+     * single pass. Each group keeps the encounter order of its elements.
+     * 
+     * @return groups by key, ordered by the first occurrence of each key.
+     */
+    public <K> Map<K, Do<E, E>> partitionBy(
+            final MapExpression<E, K> expression) {
+        Map<K, List<E>> groups = new LinkedHashMap<K, List<E>>();
         for (E element : this.collection) {
-            if (!expression.predicate(element)) {
-                result.add(element);
+            K key = expression.transform(element);
+            List<E> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<E>();
+                groups.put(key, group);
             }
+            group.add(element);
         }
-        return new Do<E, E>(result);
+
+        Map<K, Do<E, E>> result = new LinkedHashMap<K, Do<E, E>>(
+                groups.size() * 4 / 3 + 1);
+        for (Map.Entry<K, List<E>> group : groups.entrySet()) {
+            Do<E, E> groupDo = derive(group.getValue());
+            result.put(group.getKey(), groupDo);
+        }
+        return result;
+    }
+
+    /**
+     * Groups the collection by key. Use <code>toMap</code> on the result
+     * for the groups themselves, or <code>reduce</code> to aggregate each
+     * group without building it.
+     * 
+     * @see GroupBy
+     */
+    public <K> GroupBy<E, K, R> groupBy(final MapExpression<E, K> expression) {
+        return new GroupBy<E, K, R>(this, expression, null);
+    }
+
+    /**
+     * Inner hash join. Pairs every element with every element of
+     * <code>other</code> that has an equal key. Elements with a
+     * <code>null</code> key never match.
+     * <p>
+     * The smaller collection is loaded into a hash table and the larger one
+     * is scanned once against it. The result follows the order of the
+     * larger collection.
+     * </p>
+     */
+    public <F, K> Do<Pair<E, F>, Pair<E, F>> join(final Do<F, ?> other,
+            final MapExpression<E, K> leftKey,
+            final MapExpression<F, K> rightKey) {
+        Collection<E> left = this.materialized();
+        Collection<F> right = other.materialized();
+        List<Pair<E, F>> result = new ArrayList<Pair<E, F>>();
+
+        if (right.size() <= left.size()) {
+            Map<K, List<F>> table = hashTable(right, rightKey);
+            for (E element : left) {
+                List<F> matches = table.get(leftKey.transform(element));
+                if (matches != null) {
+                    for (F match : matches) {
+                        result.add(new Pair<E, F>(element, match));
+                    }
+                }
+            }
+        } else {
+            Map<K, List<E>> table = hashTable(left, leftKey);
+            for (F element : right) {
+                List<E> matches = table.get(rightKey.transform(element));
+                if (matches != null) {
+                    for (E match : matches) {
+                        result.add(new Pair<E, F>(match, element));
+                    }
+                }
+            }
+        }
+        return derive(result);
+    }
+
+    /**
+     * Left outer hash join. Like <code>join</code>, but elements without a
+     * match in <code>other</code> are kept, paired with <code>null</code>.
+     * <code>other</code> is loaded into a hash table and the result follows
+     * the order of this collection.
+     */
+    public <F, K> Do<Pair<E, F>, Pair<E, F>> leftOuterJoin(
+            final Do<F, ?> other, final MapExpression<E, K> leftKey,
+            final MapExpression<F, K> rightKey) {
+        Map<K, List<F>> table = hashTable(other.materialized(), rightKey);
+        List<Pair<E, F>> result = new ArrayList<Pair<E, F>>();
+        for (E element : this.collection) {
+            List<F> matches = table.get(leftKey.transform(element));
+            if (matches == null) {
+                result.add(new Pair<E, F>(element, null));
+            } else {
+                for (F match : matches) {
+                    result.add(new Pair<E, F>(element, match));
+                }
+            }
+        }
+        return derive(result);
+    }
+
+    /**
+     * Semi join.
+     * 
+     * @return elements that have at least one element with an equal key in
+     *         <code>other</code>, each element once.
+     */
+    public <F, K> Do<E, E> semiJoin(final Do<F, ?> other,
+            final MapExpression<E, K> leftKey,
+            final MapExpression<F, K> rightKey) {
+        return this.select(keyIn(other, leftKey, rightKey));
+    }
+
+    /**
+     * Anti join.
+     * 
+     * @return elements that have no element with an equal key in
+     *         <code>other</code>.
+     */
+    public <F, K> Do<E, E> antiJoin(final Do<F, ?> other,
+            final MapExpression<E, K> leftKey,
+            final MapExpression<F, K> rightKey) {
+        return this.reject(keyIn(other, leftKey, rightKey));
+    }
+
+    /**
+     * @return an expression matching elements whose key is also a key of an
+     *         element in <code>other</code>.
+     */
+    private static <E, F, K> BooleanExpression<E> keyIn(final Do<F, ?> other,
+            final MapExpression<E, K> leftKey,
+            final MapExpression<F, K> rightKey) {
+        final Set<K> keys = new HashSet<K>();
+        for (F element : other) {
+            K key = rightKey.transform(element);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return new BooleanExpression<E>() {
+            public boolean predicate(final E element) {
+                K key = leftKey.transform(element);
+                return key != null && keys.contains(key);
+            }
+        };
+    }
+
+    /**
+     * @return elements by key, skipping elements with a <code>null</code>
+     *         key.
+     */
+    private static <B, K> Map<K, List<B>> hashTable(final Collection<B> elements,
+            final MapExpression<B, K> key) {
+        Map<K, List<B>> table = new HashMap<K, List<B>>(
+                elements.size() * 4 / 3 + 1);
+        for (B element : elements) {
+            K k = key.transform(element);
+            if (k == null) {
+                continue;
+            }
+            List<B> matches = table.get(k);
+            if (matches == null) {
+                matches = new ArrayList<B>(1);
+                table.put(k, matches);
+            }
+            matches.add(element);
+        }
+        return table;
+    }
+
+    /**
+     * @return a fan-out to register several consumers on, which are then
+     *         all fed from a single traversal of this collection.
+     * @see FanOut
+     */
+    public FanOut<E> fanOut() {
+        return new FanOut<E>(this);
     }
 
     /**
      * Removes the first element in the collection equal to the given element.
      * If you want to remove all elements then call <code>unique()</code>
-     * first.
+     * first, or use <code>rejectAllElements</code>.
+     * <p>
+     * An element given <em>n</em> times removes the first <em>n</em> equal
+     * elements. The elements are looked up in a hash table, so the
+     * collection is only traversed once.
+     * </p>
      * 
      * @see Do#unique()
+     * @see Do#rejectAllElements(Object...)
      */
     public Do<E, E> rejectElement(final E... elements) {
-        Collection<E> result = new ArrayList<E>(this.collection);
+        Map<E, Integer> remaining = new HashMap<E, Integer>(
+                elements.length * 4 / 3 + 1);
         for (int i = 0; i < elements.length; i++) {
-            result.remove(elements[i]);
+            Integer count = remaining.get(elements[i]);
+            remaining.put(elements[i], count == null ? 1 : count + 1);
+        }
+
+        Collection<E> source = this.materialized();
+        Collection<E> result = new ArrayList<E>(source.size());
+        for (E element : source) {
+            if (!remaining.isEmpty()) {
+                Integer count = remaining.get(element);
+                if (count != null) {
+                    if (count == 1) {
+                        remaining.remove(element);
+                    } else {
+                        remaining.put(element, count - 1);
+                    }
+                    continue;
+                }
+            }
+            result.add(element);
         }
-        return new Do<E, E>(result);
+        if (this.collection instanceof PersistentVector<?>) {
+            return derive(PersistentVector.of(result));
+        }
+        return derive(result);
+    }
+
+    /**
+     * Removes all elements in the collection equal to any of the given
+     * elements.
+     * <p>
+     * The array is only read, never stored, so passing generic elements is
+     * safe.
+     * </p>
+     * 
+     * @see Do#rejectAllElements(Set)
+     */
+    @SafeVarargs
+    public final Do<E, E> rejectAllElements(final E... elements) {
+        return rejectAllElements(new HashSet<E>(Arrays.asList(elements)));
+    }
+
+    /**
+     * Removes all elements in the collection contained in the given set.
+     * The set is used as is for lookups, so a set with fast
+     * <code>contains</code> should be used. Like <code>reject</code> this
+     * is deferred in lazy mode and split in parallel mode.
+     * 
+     * @see Do#reject(BooleanExpression)
+     */
+    public Do<E, E> rejectAllElements(final Set<?> elements) {
+        return reject(new BooleanExpression<E>() {
+            public boolean predicate(final E element) {
+                return elements.contains(element);
+            }
+        });
     }
 
     /**
      * Adds an element to the collection.
+     * <p>
+     * If the collection is persistent the result is a new version sharing
+     * structure with it, built in O(log32 n) per element, instead of a copy.
+     * </p>
+     * 
+     * @see Do#persistent()
      */
     public Do<E, E> injectElement(final E... elements) {
+        if (this.collection instanceof PersistentVector<?>) {
+            return derive(((PersistentVector<E>) this.collection)
+                    .plusAll(elements));
+        }
+
         Collection<E> result = new ArrayList<E>(this.collection);
         for (int i = 0; i < elements.length; i++) {
             result.add(elements[i]);
         }
-        return new Do<E, E>(result);
+        return derive(result);
     }
 
     /**
@@ -208,7 +1072,7 @@ public class Do<E, R> implements Collection<E> {
      *            initial value in a reduce operation.
      */
     public <S> Do<E, S> withInitialValue(final S start) {
-        Do<E, S> result = new Do<E, S>(this.collection);
+        Do<E, S> result = derive(this.collection);
         result.reduceResult = start;
         return result;
     }
@@ -225,13 +1089,156 @@ public class Do<E, R> implements Collection<E> {
                     + "reducing. Use 'withStartValue'");
         }
 
-        for (E element : this.collection) {
-            this.reduceResult = expr.reduce(this.reduceResult, element);
+        this.reduceResult = fold(this.evaluated(), this.reduceResult, expr);
+        return this.reduceResult;
+    }
+
+    /**
+     * Reduces the collection in a way that can be split over several
+     * threads in parallel mode. Each chunk of the collection is reduced
+     * separately, starting from the initial value, and the partial results
+     * are merged in encounter order by the combiner.
+     * <p>
+     * Since the initial value may be used once per chunk it must be an
+     * identity for the combiner, e.g. <code>0</code> for a sum, and must not
+     * be mutated by the expression. Use
+     * {@link #reduce(InitialValueExpression, ReduceExpression, CombineExpression)}
+     * for mutable accumulators.
+     * </p>
+     * 
+     * @throws IllegalStateException
+     *             if no starting value is set
+     */
+    public R reduce(final ReduceExpression<E, R> expr,
+            final CombineExpression<R> combiner) throws IllegalStateException {
+
+        if (this.reduceResult == null) {
+            throw new IllegalStateException("Must set starting value before "
+                    + "reducing. Use 'withStartValue'");
         }
 
+        final R identity = this.reduceResult;
+        return reduce(new InitialValueExpression<R>() {
+            public R initialValue() {
+                return identity;
+            }
+        }, expr, combiner);
+    }
+
+    /**
+     * Reduces the collection in a way that can be split over several
+     * threads in parallel mode. Each chunk of the collection is reduced
+     * into its own accumulator created by <code>initial</code>, and the
+     * partial results are merged in encounter order by the combiner.
+     * 
+     * @param initial
+     *            creates a new accumulator for each chunk
+     */
+    public R reduce(final InitialValueExpression<R> initial,
+            final ReduceExpression<E, R> expr,
+            final CombineExpression<R> combiner) {
+        this.reduceResult = combine(initial, expr, combiner);
         return this.reduceResult;
     }
 
+    private <S> S combine(final InitialValueExpression<S> initial,
+            final ReduceExpression<E, S> expr,
+            final CombineExpression<S> combiner) {
+        Collection<?> source = this.collection;
+        Stage[] stages = Stage.NONE;
+        if (this.collection instanceof LazyCollection<?>) {
+            source = ((LazyCollection<?>) this.collection).source();
+            stages = ((LazyCollection<?>) this.collection).stages();
+        }
+
+        if (Parallel.supports(source, stages, this.pool)) {
+            return Parallel.reduce(this.pool, (List<?>) source, stages,
+                    initial, expr, combiner);
+        }
+        return fold(this.collection, initial.initialValue(), expr);
+    }
+
+    /**
+     * Declares that the collection is already sorted by the naturally ordered
+     * key returned by the expression, so range selections can use binary
+     * search and return views instead of copies.
+     * <p>
+     * Random access lists and arrays are used as they are, other collections
+     * and pending lazy operations are copied into a new list once.
+     * </p>
+     * 
+     * @see SortedSource
+     */
+    public <K extends Comparable<? super K>> SortedSource<K, E> assumeSortedBy(
+            final MapExpression<E, K> key) {
+        return new SortedSource<K, E>(this.randomAccess(), key, null);
+    }
+
+    /**
+     * Declares that the collection is already sorted by the key returned by
+     * the expression, in the order of <code>comparator</code>.
+     * 
+     * @see Do#assumeSortedBy(MapExpression)
+     */
+    public <K> SortedSource<K, E> assumeSortedBy(
+            final MapExpression<E, K> key, final Comparator<? super K> comparator) {
+        return new SortedSource<K, E>(this.randomAccess(), key, comparator);
+    }
+
+    /**
+     * Declares that the elements are already sorted by
+     * <code>comparator</code>. Range selections take elements as bounds.
+     * 
+     * @see Do#assumeSortedBy(MapExpression)
+     */
+    public SortedSource<E, E> assumeSorted(
+            final Comparator<? super E> comparator) {
+        return new SortedSource<E, E>(this.randomAccess(),
+                new MapExpression<E, E>() {
+                    public E transform(final E element) {
+                        return element;
+                    }
+                }, comparator);
+    }
+
+    /**
+     * @return a new collection with all elements sorted by the comparator.
+     *         The sort is stable.
+     */
+    public Do<E, E> sorted(final Comparator<? super E> comparator) {
+        List<E> result = this.toList();
+        Collections.sort(result, comparator);
+        return derive(result);
+    }
+
+    /**
+     * @return the <code>limit</code> largest elements according to the
+     *         comparator, largest first. Uses a heap of at most
+     *         <code>limit</code> elements, so it takes O(n log limit) time.
+     *         In parallel mode each chunk fills its own heap and the heaps
+     *         are merged.
+     */
+    public Do<E, E> topK(final int limit,
+            final Comparator<? super E> comparator) {
+        return bottomK(limit, Collections.reverseOrder(comparator));
+    }
+
+    /**
+     * @return the <code>limit</code> smallest elements according to the
+     *         comparator, smallest first.
+     * @see Do#topK(int, Comparator)
+     */
+    public Do<E, E> bottomK(final int limit,
+            final Comparator<? super E> comparator) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: "
+                    + limit);
+        }
+        BoundedHeap.Expressions<E> heap = BoundedHeap.expressions(limit,
+                comparator);
+        return derive(combine(heap, heap, heap).toSortedList());
+    }
+
     public Do<E, R> and() {
         return this;
     }
@@ -241,40 +1248,255 @@ public class Do<E, R> implements Collection<E> {
     }
 
     /**
-     * Retains only unique values in the collection. Duplicates are removed.
+     * Retains only unique values in the collection. Duplicates are removed,
+     * keeping the first occurrence of each value in encounter order. The
+     * result is backed by a <code>LinkedHashSet</code>, so
+     * <code>contains</code> runs in constant time.
+     * 
+     * @see Do#uniqueBy(MapExpression)
      */
     public Do<E, E> unique() {
-        return new Do<E, E>(this.toSet());
+        Collection<E> evaluated = this.evaluated();
+        if (evaluated instanceof LazyCollection<?>) {
+            return derive(((LazyCollection<E>) evaluated)
+                    .drainTo(new LinkedHashSet<E>()));
+        }
+        return derive(new LinkedHashSet<E>(evaluated));
     }
 
     /**
      * Alias for <code>unique</code>.
      */
     public Do<E, E> removeDuplicates() {
-        return new Do<E, E>(this.toSet());
+        return unique();
+    }
+
+    /**
+     * Retains only the first element, in encounter order, of each set of
+     * elements with equal keys. The keys are tracked in a compact open
+     * addressing table instead of a <code>HashSet</code>, so no entry object
+     * is created per key. The table and the result are sized from the share
+     * of distinct keys among the first <code>SAMPLE_SIZE</code> elements.
+     * 
+     * @param expression
+     *            key of each element, or <code>null</code> to compare the
+     *            elements themselves
+     */
+    public <K> Do<E, E> uniqueBy(final MapExpression<E, K> expression) {
+        Collection<?> source = this.collection;
+        if (source instanceof LazyCollection<?>) {
+            source = ((LazyCollection<?>) source).source();
+        }
+        int size = source.size();
+        KeyTable seen = new KeyTable(Math.min(size, SAMPLE_SIZE));
+        ArrayList<E> result = new ArrayList<E>(Math.min(size, SAMPLE_SIZE));
+        int i = 0;
+        for (E element : this.collection) {
+            if (i++ == SAMPLE_SIZE) {
+                int expectedSize = estimateCapacity(result.size(), size);
+                seen.ensureCapacity(expectedSize);
+                result.ensureCapacity(expectedSize);
+            }
+            Object key = expression == null ? element : expression
+                    .transform(element);
+            if (seen.add(key)) {
+                result.add(element);
+            }
+        }
+        return derive(result);
     }
 
+    /**
+     * @return a new <code>HashSet</code> sized for the number of elements
+     *         in the collection.
+     */
     public Set<E> toSet() {
-        return new HashSet<E>(this.collection);
+        Collection<E> evaluated = this.evaluated();
+        if (evaluated instanceof LazyCollection<?>) {
+            return ((LazyCollection<E>) evaluated).drainTo(new HashSet<E>());
+        }
+        return new HashSet<E>(evaluated);
     }
 
+    /**
+     * @return a new array backed list.
+     * @see Do#toLinkedList()
+     */
     public List<E> toList() {
-        return new LinkedList<E>(this.collection);
+        Collection<E> evaluated = this.evaluated();
+        if (evaluated instanceof LazyCollection<?>) {
+            return ((LazyCollection<E>) evaluated).drainTo(new ArrayList<E>());
+        }
+        if (evaluated != this.collection) {
+            return (List<E>) evaluated;
+        }
+        return new ArrayList<E>(evaluated);
+    }
+
+    /**
+     * @return a new <code>LinkedList</code>, which is what
+     *         <code>toList</code> returned in earlier versions.
+     */
+    public List<E> toLinkedList() {
+        return new LinkedList<E>(this.materialized());
+    }
+
+    /**
+     * @return an unmodifiable list backed by an array of exactly the
+     *         collection's size.
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> toImmutableList() {
+        Object[] elements = this.materialized().toArray();
+        switch (elements.length) {
+        case 0:
+            return Collections.emptyList();
+        case 1:
+            return Collections.singletonList((E) elements[0]);
+        default:
+            return Collections.unmodifiableList((List<E>) Arrays
+                    .asList(elements));
+        }
+    }
+
+    /**
+     * @return an unmodifiable set. Empty and single element sets do not
+     *         allocate a hash table.
+     */
+    public Set<E> toImmutableSet() {
+        Set<E> set = this.toSet();
+        switch (set.size()) {
+        case 0:
+            return Collections.emptySet();
+        case 1:
+            return Collections.singleton(set.iterator().next());
+        default:
+            return Collections.unmodifiableSet(set);
+        }
+    }
+
+    /**
+     * @return the collection with any pending lazy operations evaluated.
+     */
+    private Collection<E> materialized() {
+        if (this.collection instanceof LazyCollection<?>) {
+            return this.toList();
+        }
+        return this.collection;
+    }
+
+    /**
+     * @return the collection if it is a random access list, otherwise its
+     *         elements copied into a new list.
+     */
+    private List<E> randomAccess() {
+        Collection<E> collection = this.materialized();
+        if (collection instanceof List<?> && collection instanceof RandomAccess) {
+            return (List<E>) collection;
+        }
+        return new ArrayList<E>(collection);
+    }
+
+    /**
+     * @return pending lazy operations evaluated in parallel if in parallel
+     *         mode and the source supports it, otherwise the collection
+     *         itself.
+     */
+    private Collection<E> evaluated() {
+        if (this.collection instanceof LazyCollection<?>) {
+            LazyCollection<E> lazy = (LazyCollection<E>) this.collection;
+            if (Parallel.supports(lazy.source(), lazy.stages(), this.pool)) {
+                return Parallel.<E> apply(this.pool, (List<?>) lazy.source(),
+                        lazy.stages());
+            }
+        }
+        return this.collection;
+    }
+
+    /**
+     * Creates a hash index on the key returned by the expression, for finding
+     * elements by key in constant time. The index is updated by
+     * <code>add</code>, <code>remove</code> and the other modifying methods
+     * of this <code>Do</code>.
+     * 
+     * @see HashIndex
+     */
+    public <K> HashIndex<K, E> hashIndex(final MapExpression<E, K> key) {
+        return register(new HashIndex<K, E>(this.collection, key));
+    }
+
+    /**
+     * Creates a sorted index on the naturally ordered key returned by the
+     * expression, for finding elements by key or key range in logarithmic
+     * time.
+     * 
+     * @see Do#hashIndex(MapExpression)
+     * @see SortedIndex
+     */
+    public <K extends Comparable<? super K>> SortedIndex<K, E> sortedIndex(
+            final MapExpression<E, K> key) {
+        return register(new SortedIndex<K, E>(this.collection, key, null));
+    }
+
+    /**
+     * Creates a sorted index on the key returned by the expression, ordered by
+     * <code>comparator</code>.
+     * 
+     * @see Do#sortedIndex(MapExpression)
+     */
+    public <K> SortedIndex<K, E> sortedIndex(final MapExpression<E, K> key,
+            final Comparator<? super K> comparator) {
+        return register(new SortedIndex<K, E>(this.collection, key,
+                comparator));
+    }
+
+    private <I extends Index<?, E>> I register(final I index) {
+        if (this.indexes == null) {
+            this.indexes = new ArrayList<Index<?, E>>(2);
+        }
+        this.indexes.add(index);
+        return index;
+    }
+
+    private void invalidateIndexes() {
+        if (this.indexes != null) {
+            for (Index<?, E> index : this.indexes) {
+                index.invalidate();
+            }
+        }
     }
 
     /*
      * Collection implementation.
      */
     public boolean add(E e) {
-        return this.collection.add(e);
+        boolean added = this.collection.add(e);
+        if (added && this.indexes != null) {
+            for (Index<?, E> index : this.indexes) {
+                index.added(e);
+            }
+        }
+        return added;
     }
 
     public boolean addAll(Collection<? extends E> c) {
-        return this.collection.addAll(c);
+        if (this.indexes == null) {
+            return this.collection.addAll(c);
+        }
+        boolean changed = false;
+        for (E e : c) {
+            changed |= add(e);
+        }
+        return changed;
     }
 
     public void clear() {
         this.collection.clear();
+        if (this.indexes != null) {
+            for (Index<?, E> index : this.indexes) {
+                index.cleared();
+            }
+        }
     }
 
     public boolean contains(Object o) {
@@ -290,19 +1512,50 @@ public class Do<E, R> implements Collection<E> {
     }
 
     public Iterator<E> iterator() {
-        return this.collection.iterator();
+        if (this.indexes == null) {
+            return this.collection.iterator();
+        }
+        final Iterator<E> iterator = this.collection.iterator();
+        return new Iterator<E>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public E next() {
+                return iterator.next();
+            }
+
+            public void remove() {
+                iterator.remove();
+                invalidateIndexes();
+            }
+        };
     }
 
     public boolean remove(Object o) {
-        return this.collection.remove(o);
+        boolean removed = this.collection.remove(o);
+        if (removed && this.indexes != null) {
+            for (Index<?, E> index : this.indexes) {
+                index.removed(o);
+            }
+        }
+        return removed;
     }
 
     public boolean removeAll(Collection<?> c) {
-        return this.collection.removeAll(c);
+        boolean changed = this.collection.removeAll(c);
+        if (changed) {
+            invalidateIndexes();
+        }
+        return changed;
     }
 
     public boolean retainAll(Collection<?> c) {
-        return this.collection.retainAll(c);
+        boolean changed = this.collection.retainAll(c);
+        if (changed) {
+            invalidateIndexes();
+        }
+        return changed;
     }
 
     public int size() {
@@ -331,4 +1584,12 @@ public class Do<E, R> implements Collection<E> {
     public static interface ReduceExpression<E, R> {
         R reduce(R accumulatedValue, E element);
     }
+
+    public static interface CombineExpression<R> {
+        R combine(R left, R right);
+    }
+
+    public static interface InitialValueExpression<R> {
+        R initialValue();
+    }
 }
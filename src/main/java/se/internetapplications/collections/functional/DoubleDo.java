@@ -0,0 +1,183 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counterpart of <code>Do</code> for <code>double</code> values. Elements are
+ * kept in an <code>double[]</code> and expressions work on unboxed values, so no
+ * wrapper objects are created.
+ * 
+ * <ul>
+ * <li><code>Do.withDoubles(values).select(expression).sum()</code></li>
+ * <li><code>Do.withDoubles(values).withInitialValue(start).reduce(expression)</code></li>
+ * </ul>
+ * 
+ * @see Do#withDoubles(double[])
+ */
+public class DoubleDo extends PrimitiveDo {
+
+    /**
+     * Values to operate on. Only the first <code>size</code> are used.
+     */
+    private final double[] values;
+
+    /**
+     * Intermediate value in reduce operations.
+     */
+    private double reduceResult;
+
+    protected DoubleDo(final double[] values, final int size) {
+        super(size);
+        this.values = values;
+    }
+
+    /**
+     * Sets values to use in operations. The array is not copied.
+     */
+    public static DoubleDo with(final double... values) {
+        return new DoubleDo(values, values.length);
+    }
+
+    /**
+     * @return a new instance containing all values matching the expression.
+     */
+    public DoubleDo select(final DoubleBooleanExpression expression) {
+        double[] result = new double[this.size];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (expression.predicate(this.values[i])) {
+                result[count++] = this.values[i];
+            }
+        }
+        return new DoubleDo(compact(result, count), count);
+    }
+
+    /**
+     * @return a new instance containing all values except those matching the
+     *         expression.
+     */
+    public DoubleDo reject(final DoubleBooleanExpression expression) {
+        double[] result = new double[this.size];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (!expression.predicate(this.values[i])) {
+                result[count++] = this.values[i];
+            }
+        }
+        return new DoubleDo(compact(result, count), count);
+    }
+
+    /**
+     * @return a new instance containing values mapped to a new value by the
+     *         expression.
+     */
+    public DoubleDo mapTo(final DoubleMapExpression expression) {
+        double[] result = new double[this.size];
+        for (int i = 0; i < this.size; i++) {
+            result[i] = expression.transform(this.values[i]);
+        }
+        return new DoubleDo(result, this.size);
+    }
+
+    /**
+     * Alias for mapTo.
+     */
+    public DoubleDo map(final DoubleMapExpression expression) {
+        return mapTo(expression);
+    }
+
+    /**
+     * @return first value matching expression or <code>null</code> if no
+     *         matching value could be found.
+     */
+    public Double detect(final DoubleBooleanExpression expression) {
+        for (int i = 0; i < this.size; i++) {
+            if (expression.predicate(this.values[i])) {
+                return this.values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param start
+     *            initial value in a reduce operation.
+     */
+    public DoubleDo withInitialValue(final double start) {
+        DoubleDo result = new DoubleDo(this.values, this.size);
+        result.reduceResult = start;
+        result.hasInitialValue = true;
+        return result;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if no starting value is set
+     */
+    public double reduce(final DoubleReduceExpression expr)
+            throws IllegalStateException {
+        requireInitialValue();
+
+        for (int i = 0; i < this.size; i++) {
+            this.reduceResult = expr.reduce(this.reduceResult, this.values[i]);
+        }
+
+        return this.reduceResult;
+    }
+
+    public double sum() {
+        double sum = 0;
+        for (int i = 0; i < this.size; i++) {
+            sum += this.values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return count, sum, minimum, maximum, mean and variance computed in a
+     *         single pass.
+     */
+    public Statistics statistics() {
+        Statistics statistics = new Statistics();
+        for (int i = 0; i < this.size; i++) {
+            statistics.accept(this.values[i]);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    /**
+     * @return the values boxed in a <code>Do</code>, for operations only
+     *         available on objects.
+     */
+    public Do<Double, Double> boxed() {
+        List<Double> result = new ArrayList<Double>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            result.add(this.values[i]);
+        }
+        return Do.with(result);
+    }
+
+    /*
+     * Expression interfaces.
+     */
+    public static interface DoubleMapExpression {
+        double transform(double element);
+    }
+
+    public static interface DoubleBooleanExpression {
+        boolean predicate(double element);
+    }
+
+    public static interface DoubleReduceExpression {
+        double reduce(double accumulatedValue, double element);
+    }
+}
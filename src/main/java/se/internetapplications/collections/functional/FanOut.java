@@ -0,0 +1,209 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Feeds a single traversal of a collection to several consumers, for
+ * sources that are expensive to iterate.
+ * 
+ * <pre>
+ * FanOut&lt;Order&gt; fanOut = Do.with(orders).fanOut();
+ * FanOut.Result&lt;List&lt;Order&gt;&gt; large = fanOut.select(isLarge);
+ * FanOut.Result&lt;Integer&gt; total = fanOut.reduce(0, sumOfAmounts);
+ * FanOut.Result&lt;Order&gt; firstRefund = fanOut.detect(isRefund);
+ * fanOut.run();
+ * </pre>
+ * 
+ * The traversal stops early once every consumer is done, e.g. when only
+ * <code>detect</code> consumers are registered and all have found a match.
+ * 
+ * @see Do#fanOut()
+ */
+public class FanOut<E> {
+
+    private final Iterable<E> source;
+
+    private final List<Consumer<? super E>> consumers = new ArrayList<Consumer<? super E>>();
+
+    private boolean done;
+
+    FanOut(final Iterable<E> source) {
+        this.source = source;
+    }
+
+    /**
+     * Registers a consumer to receive each element of the traversal.
+     * 
+     * @throws IllegalStateException
+     *             if the traversal has already run
+     */
+    public <C extends Consumer<? super E>> C add(final C consumer)
+            throws IllegalStateException {
+        if (this.done) {
+            throw new IllegalStateException("Already run");
+        }
+        this.consumers.add(consumer);
+        return consumer;
+    }
+
+    /**
+     * @return handle to the elements matching the expression.
+     */
+    public Result<List<E>> select(final BooleanExpression<E> expression) {
+        return add(new Collector<E, E>() {
+            public boolean accept(final E element) {
+                if (expression.predicate(element)) {
+                    this.result.add(element);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return handle to the elements not matching the expression.
+     */
+    public Result<List<E>> reject(final BooleanExpression<E> expression) {
+        return add(new Collector<E, E>() {
+            public boolean accept(final E element) {
+                if (!expression.predicate(element)) {
+                    this.result.add(element);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return handle to the elements mapped by the expression, except
+     *         <code>null</code> results.
+     */
+    public <S> Result<List<S>> mapTo(final MapExpression<E, S> expression) {
+        return add(new Collector<E, S>() {
+            public boolean accept(final E element) {
+                S s = expression.transform(element);
+                if (s != null) {
+                    this.result.add(s);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return handle to the first element matching the expression, or
+     *         <code>null</code> if there is none. Done after the first
+     *         match.
+     */
+    public Result<E> detect(final BooleanExpression<E> expression) {
+        return add(new Handle<E, E>() {
+            public boolean accept(final E element) {
+                if (expression.predicate(element)) {
+                    this.result = element;
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return handle to the reduced value.
+     */
+    public <S> Result<S> reduce(final S start,
+            final ReduceExpression<E, S> expression) {
+        Handle<E, S> handle = new Handle<E, S>() {
+            public boolean accept(final E element) {
+                this.result = expression.reduce(this.result, element);
+                return true;
+            }
+        };
+        handle.result = start;
+        return add(handle);
+    }
+
+    /**
+     * Traverses the source once, passing each element to every consumer that
+     * is not yet done, and completes all handles.
+     * 
+     * @throws IllegalStateException
+     *             if the traversal has already run
+     */
+    public void run() throws IllegalStateException {
+        if (this.done) {
+            throw new IllegalStateException("Already run");
+        }
+        this.done = true;
+
+        @SuppressWarnings( { "unchecked", "rawtypes" })
+        Consumer<? super E>[] active = this.consumers
+                .toArray(new Consumer[this.consumers.size()]);
+        int remaining = active.length;
+        if (remaining > 0) {
+            for (E element : this.source) {
+                for (int i = 0; i < remaining; i++) {
+                    if (!active[i].accept(element)) {
+                        active[i--] = active[--remaining];
+                        active[remaining] = null;
+                    }
+                }
+                if (remaining == 0) {
+                    break;
+                }
+            }
+        }
+
+        for (Consumer<? super E> consumer : this.consumers) {
+            if (consumer instanceof Handle<?, ?>) {
+                ((Handle<?, ?>) consumer).complete = true;
+            }
+        }
+    }
+
+    /**
+     * Receives the elements of a traversal.
+     */
+    public static interface Consumer<E> {
+        /**
+         * @return <code>false</code> if no further elements are needed.
+         */
+        boolean accept(E element);
+    }
+
+    /**
+     * Result of a consumer, available once the traversal has run.
+     */
+    public static interface Result<T> {
+        /**
+         * @throws IllegalStateException
+         *             if the traversal has not run yet
+         */
+        T get() throws IllegalStateException;
+    }
+
+    private abstract static class Handle<E, T> implements Consumer<E>,
+            Result<T> {
+        T result;
+
+        boolean complete;
+
+        public T get() throws IllegalStateException {
+            if (!this.complete) {
+                throw new IllegalStateException("Call 'run' first");
+            }
+            return this.result;
+        }
+    }
+
+    private abstract static class Collector<E, S> extends
+            Handle<E, List<S>> {
+        Collector() {
+            this.result = new ArrayList<S>();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package se.internetapplications.collections.functional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.BiConsumer;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * Template for a fused loop over up to {@link #SLOTS} select, reject and map
+ * operations, each called from its own call site.
+ * <p>
+ * A shared loop calling <code>predicate</code> and <code>transform</code>
+ * through the same call sites for every pipeline sees many expression
+ * classes, and the JIT stops inlining them. {@link #compile(int[], Object[])}
+ * therefore defines a fresh copy of this class in its own class loader for
+ * every pipeline. Each copy is profiled separately, so its call sites only
+ * ever see the expressions of one pipeline and stay monomorphic.
+ * </p>
+ * <p>
+ * Copies live in a different runtime package, so the class must only refer
+ * to itself, public types of this library and the JDK.
+ * </p>
+ */
+final class FusedLoop implements BiConsumer<Collection<?>, Collection<Object>> {
+
+    static final int SLOTS = 6;
+
+    static final int NONE = 0;
+
+    static final int SELECT = 1;
+
+    static final int REJECT = 2;
+
+    static final int MAP = 3;
+
+    private static final Object REJECTED = new Object();
+
+    private static volatile byte[] bytecode;
+
+    private final BooleanExpression<Object> predicate0;
+
+    private final MapExpression<Object, Object> transform0;
+
+    private final int kind0;
+
+    private final BooleanExpression<Object> predicate1;
+
+    private final MapExpression<Object, Object> transform1;
+
+    private final int kind1;
+
+    private final BooleanExpression<Object> predicate2;
+
+    private final MapExpression<Object, Object> transform2;
+
+    private final int kind2;
+
+    private final BooleanExpression<Object> predicate3;
+
+    private final MapExpression<Object, Object> transform3;
+
+    private final int kind3;
+
+    private final BooleanExpression<Object> predicate4;
+
+    private final MapExpression<Object, Object> transform4;
+
+    private final int kind4;
+
+    private final BooleanExpression<Object> predicate5;
+
+    private final MapExpression<Object, Object> transform5;
+
+    private final int kind5;
+
+    @SuppressWarnings("unchecked")
+    FusedLoop(final int[] kinds, final Object[] expressions) {
+        this.kind0 = 0 < kinds.length ? kinds[0] : NONE;
+        this.predicate0 = (BooleanExpression<Object>) slot(kinds,
+                expressions, 0, SELECT, REJECT);
+        this.transform0 = (MapExpression<Object, Object>) slot(kinds,
+                expressions, 0, MAP, MAP);
+        this.kind1 = 1 < kinds.length ? kinds[1] : NONE;
+        this.predicate1 = (BooleanExpression<Object>) slot(kinds,
+                expressions, 1, SELECT, REJECT);
+        this.transform1 = (MapExpression<Object, Object>) slot(kinds,
+                expressions, 1, MAP, MAP);
+        this.kind2 = 2 < kinds.length ? kinds[2] : NONE;
+        this.predicate2 = (BooleanExpression<Object>) slot(kinds,
+                expressions, 2, SELECT, REJECT);
+        this.transform2 = (MapExpression<Object, Object>) slot(kinds,
+                expressions, 2, MAP, MAP);
+        this.kind3 = 3 < kinds.length ? kinds[3] : NONE;
+        this.predicate3 = (BooleanExpression<Object>) slot(kinds,
+                expressions, 3, SELECT, REJECT);
+        this.transform3 = (MapExpression<Object, Object>) slot(kinds,
+                expressions, 3, MAP, MAP);
+        this.kind4 = 4 < kinds.length ? kinds[4] : NONE;
+        this.predicate4 = (BooleanExpression<Object>) slot(kinds,
+                expressions, 4, SELECT, REJECT);
+        this.transform4 = (MapExpression<Object, Object>) slot(kinds,
+                expressions, 4, MAP, MAP);
+        this.kind5 = 5 < kinds.length ? kinds[5] : NONE;
+        this.predicate5 = (BooleanExpression<Object>) slot(kinds,
+                expressions, 5, SELECT, REJECT);
+        this.transform5 = (MapExpression<Object, Object>) slot(kinds,
+                expressions, 5, MAP, MAP);
+    }
+
+    /**
+     * @return the expression at <code>index</code> if its kind is one of
+     *         <code>first</code> and <code>second</code>, otherwise
+     *         <code>null</code>.
+     */
+    private static Object slot(final int[] kinds, final Object[] expressions,
+            final int index, final int first, final int second) {
+        if (index >= kinds.length) {
+            return null;
+        }
+        int kind = kinds[index];
+        return kind == first || kind == second ? expressions[index] : null;
+    }
+
+    /**
+     * @return a loop running <code>expressions</code> in a class of its own,
+     *         or <code>null</code> if the environment does not allow the
+     *         class to be copied, e.g. because its bytecode cannot be read or
+     *         a security manager forbids creating class loaders.
+     * @throws IllegalStateException
+     *             if the copy was defined but could not be instantiated.
+     */
+    @SuppressWarnings("unchecked")
+    static BiConsumer<Collection<?>, Collection<Object>> compile(
+            final int[] kinds, final Object[] expressions) {
+        if (kinds.length > SLOTS) {
+            throw new IllegalArgumentException("At most " + SLOTS
+                    + " operations can be fused: " + kinds.length);
+        }
+        try {
+            Class<?> copy = new Loader(bytecode()).loadClass(FusedLoop.class
+                    .getName());
+            Constructor<?> constructor = copy
+                    .getDeclaredConstructor(int[].class, Object[].class);
+            constructor.setAccessible(true);
+            return (BiConsumer<Collection<?>, Collection<Object>>) constructor
+                    .newInstance(kinds.clone(), expressions.clone());
+        } catch (IOException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not instantiate "
+                    + FusedLoop.class.getName(), e);
+        }
+    }
+
+    /**
+     * Runs every element of <code>source</code> through the fused operations
+     * and adds the survivors to <code>target</code>.
+     */
+    public void accept(final Collection<?> source,
+            final Collection<Object> target) {
+        if (source instanceof List<?> && source instanceof RandomAccess) {
+            List<?> list = (List<?>) source;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                Object element = pass(list.get(i));
+                if (element != REJECTED) {
+                    target.add(element);
+                }
+            }
+        } else {
+            for (Iterator<?> i = source.iterator(); i.hasNext();) {
+                Object element = pass(i.next());
+                if (element != REJECTED) {
+                    target.add(element);
+                }
+            }
+        }
+    }
+
+    private Object pass(final Object element) {
+        Object current = element;
+        switch (this.kind0) {
+        case SELECT:
+            if (!this.predicate0.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case REJECT:
+            if (this.predicate0.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case MAP:
+            current = this.transform0.transform(current);
+            if (current == null) {
+                return REJECTED;
+            }
+            break;
+        default:
+            return current;
+        }
+        switch (this.kind1) {
+        case SELECT:
+            if (!this.predicate1.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case REJECT:
+            if (this.predicate1.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case MAP:
+            current = this.transform1.transform(current);
+            if (current == null) {
+                return REJECTED;
+            }
+            break;
+        default:
+            return current;
+        }
+        switch (this.kind2) {
+        case SELECT:
+            if (!this.predicate2.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case REJECT:
+            if (this.predicate2.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case MAP:
+            current = this.transform2.transform(current);
+            if (current == null) {
+                return REJECTED;
+            }
+            break;
+        default:
+            return current;
+        }
+        switch (this.kind3) {
+        case SELECT:
+            if (!this.predicate3.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case REJECT:
+            if (this.predicate3.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case MAP:
+            current = this.transform3.transform(current);
+            if (current == null) {
+                return REJECTED;
+            }
+            break;
+        default:
+            return current;
+        }
+        switch (this.kind4) {
+        case SELECT:
+            if (!this.predicate4.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case REJECT:
+            if (this.predicate4.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case MAP:
+            current = this.transform4.transform(current);
+            if (current == null) {
+                return REJECTED;
+            }
+            break;
+        default:
+            return current;
+        }
+        switch (this.kind5) {
+        case SELECT:
+            if (!this.predicate5.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case REJECT:
+            if (this.predicate5.predicate(current)) {
+                return REJECTED;
+            }
+            break;
+        case MAP:
+            current = this.transform5.transform(current);
+            if (current == null) {
+                return REJECTED;
+            }
+            break;
+        default:
+            return current;
+        }
+        return current;
+    }
+
+    private static byte[] bytecode() throws IOException {
+        byte[] bytes = bytecode;
+        if (bytes == null) {
+            InputStream in = FusedLoop.class
+                    .getResourceAsStream("FusedLoop.class");
+            if (in == null) {
+                throw new FileNotFoundException("FusedLoop.class");
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) != -1;) {
+                    out.write(buffer, 0, n);
+                }
+                bytes = out.toByteArray();
+            } finally {
+                in.close();
+            }
+            bytecode = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Defines its own copy of <code>FusedLoop</code> and delegates every other
+     * class to the loader of this library.
+     */
+    private static final class Loader extends ClassLoader {
+        private final byte[] bytecode;
+
+        Loader(final byte[] bytecode) {
+            super(FusedLoop.class.getClassLoader());
+            this.bytecode = bytecode;
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve)
+                throws ClassNotFoundException {
+            if (!FusedLoop.class.getName().equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = defineClass(name, this.bytecode, 0,
+                            this.bytecode.length);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}
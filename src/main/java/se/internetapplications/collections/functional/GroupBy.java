@@ -0,0 +1,116 @@
+package se.internetapplications.collections.functional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Groups the elements of a <code>Do</code> by key.
+ * <ul>
+ * <li><code>Do.with(collection).groupBy(key).toMap()</code></li>
+ * <li><code>Do.with(collection).groupBy(key).withInitialValue(start).reduce(expression)</code></li>
+ * <li><code>Do.with(collection).groupBy(key).reduce(initialValue, expression)</code></li>
+ * </ul>
+ * The reduce operations fold each element straight into the accumulator of
+ * its key in a single pass, without building the groups.
+ * 
+ * @see Do#groupBy(MapExpression)
+ */
+public class GroupBy<E, K, R> {
+
+    private final Do<E, ?> source;
+
+    private final MapExpression<E, K> key;
+
+    /**
+     * Initial value for each key in reduce operations.
+     */
+    private final R start;
+
+    GroupBy(final Do<E, ?> source, final MapExpression<E, K> key,
+            final R start) {
+        this.source = source;
+        this.key = key;
+        this.start = start;
+    }
+
+    /**
+     * @return groups by key, ordered by the first occurrence of each key.
+     * @see Do#partitionBy(MapExpression)
+     */
+    public Map<K, Do<E, E>> toMap() {
+        return this.source.partitionBy(this.key);
+    }
+
+    /**
+     * @param start
+     *            initial value for each key in a reduce operation. Shared by
+     *            all keys, so it must not be mutated by the expression.
+     */
+    public <S> GroupBy<E, K, S> withInitialValue(final S start) {
+        return new GroupBy<E, K, S>(this.source, this.key, start);
+    }
+
+    /**
+     * @return the reduced value of each key, ordered by the first occurrence
+     *         of each key.
+     * @throws IllegalStateException
+     *             if no starting value is set
+     */
+    public Map<K, R> reduce(final ReduceExpression<E, R> expr)
+            throws IllegalStateException {
+
+        if (this.start == null) {
+            throw new IllegalStateException("Must set starting value before "
+                    + "reducing. Use 'withInitialValue'");
+        }
+
+        return reduce(new InitialValueExpression<R>() {
+            public R initialValue() {
+                return GroupBy.this.start;
+            }
+        }, expr);
+    }
+
+    /**
+     * @param initial
+     *            creates the accumulator for each key, for mutable
+     *            accumulators.
+     * @return the reduced value of each key, ordered by the first occurrence
+     *         of each key.
+     */
+    public Map<K, R> reduce(final InitialValueExpression<R> initial,
+            final ReduceExpression<E, R> expr) {
+        Map<K, Accumulator<R>> accumulators = new LinkedHashMap<K, Accumulator<R>>();
+        for (E element : this.source) {
+            K key = this.key.transform(element);
+            Accumulator<R> accumulator = accumulators.get(key);
+            if (accumulator == null) {
+                accumulator = new Accumulator<R>(initial.initialValue());
+                accumulators.put(key, accumulator);
+            }
+            accumulator.value = expr.reduce(accumulator.value, element);
+        }
+
+        Map<K, R> result = new LinkedHashMap<K, R>(
+                accumulators.size() * 4 / 3 + 1);
+        for (Map.Entry<K, Accumulator<R>> entry : accumulators.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().value);
+        }
+        return result;
+    }
+
+    /**
+     * Holds the value of a key, so updating it needs only one lookup.
+     */
+    private static final class Accumulator<R> {
+        private R value;
+
+        Accumulator(final R value) {
+            this.value = value;
+        }
+    }
+}
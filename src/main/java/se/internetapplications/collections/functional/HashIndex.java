@@ -0,0 +1,51 @@
+package se.internetapplications.collections.functional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * Hash index on a key of the elements of a <code>Do</code>, finding the
+ * elements with a given key in constant time instead of scanning the whole
+ * collection.
+ * 
+ * <pre>
+ * Do&lt;Customer, Customer&gt; customers = Do.with(list);
+ * HashIndex&lt;String, Customer&gt; byId = customers.hashIndex(id);
+ * Customer customer = byId.detect(&quot;c-42&quot;);
+ * </pre>
+ * 
+ * @see Do#hashIndex(MapExpression)
+ */
+public final class HashIndex<K, E> extends Index<K, E> {
+
+    HashIndex(final Collection<E> source, final MapExpression<E, K> key) {
+        super(source, key, new HashMap<K, List<E>>());
+        rebuild();
+    }
+
+    /**
+     * @return the first element with the given key or <code>null</code> if
+     *         there is none.
+     */
+    public E detect(final K key) {
+        List<E> elements = get(key);
+        return elements == null ? null : elements.get(0);
+    }
+
+    /**
+     * @return all elements with the given key, in encounter order.
+     */
+    public Do<E, E> select(final K key) {
+        return Do.with(copy(get(key)));
+    }
+
+    /**
+     * @return <code>true</code> if any element has the given key.
+     */
+    public boolean containsKey(final K key) {
+        return get(key) != null;
+    }
+}
@@ -0,0 +1,149 @@
+package se.internetapplications.collections.functional;
+
+/**
+ * Approximate count of distinct elements in a fixed amount of memory.
+ * <p>
+ * With precision <em>p</em> the sketch uses 2<sup><em>p</em></sup> bytes
+ * and has a typical relative error of 1.04 / sqrt(2<sup><em>p</em></sup>),
+ * e.g. about 0.8% in 16 KB for precision 14. Sketches with the same
+ * precision can be merged, so partial sketches from parallel chunks combine
+ * into the sketch of the whole collection.
+ * </p>
+ * <p>
+ * Elements offered as <code>long</code> keys are hashed from all 64 bits,
+ * which keeps the error as stated up to billions of distinct elements. Other
+ * elements are hashed from their 32 bit <code>hashCode</code>, so elements
+ * with equal hash codes are counted once and large cardinalities are
+ * underestimated. Use {@link #offer(long)} or
+ * {@link ReduceToHyperLogLog#ReduceToHyperLogLog(Do.MapExpression)} with a
+ * 64 bit key, e.g. a user id, when counting more than a few million
+ * elements.
+ * </p>
+ * 
+ * @see ReduceToHyperLogLog
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+
+    private final byte[] registers;
+
+    /**
+     * @param precision
+     *            number of bits used to select a register, between
+     *            {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     */
+    public HyperLogLog(final int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between "
+                    + MIN_PRECISION + " and " + MAX_PRECISION + ": "
+                    + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Counts <code>element</code> by its <code>hashCode</code>, or by its
+     * value if it is a <code>Long</code>.
+     * 
+     * @see #offer(long)
+     */
+    public void offer(final Object element) {
+        if (element instanceof Long) {
+            offer(((Long) element).longValue());
+        } else {
+            add(mix(element == null ? 0 : element.hashCode()));
+        }
+    }
+
+    /**
+     * Counts an element identified by a 64 bit key.
+     */
+    public void offer(final long key) {
+        add(mix(key));
+    }
+
+    private void add(final long hash) {
+        int index = (int) (hash >>> (64 - this.precision));
+        int rank = Long.numberOfLeadingZeros((hash << this.precision)
+                | (1L << (this.precision - 1))) + 1;
+        if (rank > this.registers[index]) {
+            this.registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds all elements counted by <code>other</code> to this sketch.
+     * 
+     * @throws IllegalArgumentException
+     *             if the sketches have different precision
+     */
+    public void merge(final HyperLogLog other) {
+        if (other.precision != this.precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with "
+                    + "precision " + this.precision + " and "
+                    + other.precision);
+        }
+        for (int i = 0; i < this.registers.length; i++) {
+            if (other.registers[i] > this.registers[i]) {
+                this.registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return estimated number of distinct elements offered.
+     */
+    public long estimate() {
+        int m = this.registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            sum += 1.0 / (1L << this.registers[i]);
+            if (this.registers[i] == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    private static double alpha(final int m) {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Spreads the bits of a key over all 64 bits (MurmurHash3 finalizer).
+     */
+    private static long mix(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,121 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * Base of the secondary indexes of a <code>Do</code>, mapping the key of
+ * every element to the elements having that key in encounter order. Elements
+ * whose key is <code>null</code> are not indexed.
+ * <p>
+ * The index follows changes made through the <code>Do</code> it was created
+ * from. Single elements added or removed are updated in place, bulk removals
+ * mark the index as stale so it is rebuilt on the next lookup. Changes made
+ * directly to the underlying collection are not seen; call
+ * <code>rebuild</code> after such changes.
+ * </p>
+ * 
+ * @see HashIndex
+ * @see SortedIndex
+ */
+abstract class Index<K, E> {
+
+    private final Collection<E> source;
+
+    private final MapExpression<E, K> key;
+
+    private final Map<K, List<E>> entries;
+
+    private boolean stale = true;
+
+    Index(final Collection<E> source, final MapExpression<E, K> key,
+            final Map<K, List<E>> entries) {
+        this.source = source;
+        this.key = key;
+        this.entries = entries;
+    }
+
+    /**
+     * Rebuilds the index from the current contents of the source.
+     */
+    public void rebuild() {
+        this.entries.clear();
+        for (E element : this.source) {
+            add(element);
+        }
+        this.stale = false;
+    }
+
+    /**
+     * @return the entries of the index, rebuilding it first if it is stale.
+     */
+    Map<K, List<E>> entries() {
+        if (this.stale) {
+            rebuild();
+        }
+        return this.entries;
+    }
+
+    /**
+     * @return the elements with the given key, or <code>null</code>.
+     */
+    List<E> get(final K key) {
+        return entries().get(key);
+    }
+
+    void added(final E element) {
+        if (!this.stale) {
+            add(element);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void removed(final Object element) {
+        if (this.stale) {
+            return;
+        }
+        K key = this.key.transform((E) element);
+        List<E> elements = key == null ? null : this.entries.get(key);
+        if (elements == null || !elements.remove(element)) {
+            // the key of an equal element differed, find it on next lookup
+            invalidate();
+        } else if (elements.isEmpty()) {
+            this.entries.remove(key);
+        }
+    }
+
+    void cleared() {
+        this.entries.clear();
+        this.stale = false;
+    }
+
+    void invalidate() {
+        this.stale = true;
+    }
+
+    /**
+     * @return a new list of the given elements, which may be
+     *         <code>null</code>.
+     */
+    static <E> List<E> copy(final List<E> elements) {
+        return elements == null ? new ArrayList<E>(0) : new ArrayList<E>(
+                elements);
+    }
+
+    private void add(final E element) {
+        K key = this.key.transform(element);
+        if (key == null) {
+            return;
+        }
+        List<E> elements = this.entries.get(key);
+        if (elements == null) {
+            elements = new ArrayList<E>(1);
+            this.entries.put(key, elements);
+        }
+        elements.add(element);
+    }
+}
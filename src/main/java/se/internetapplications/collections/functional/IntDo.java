@@ -0,0 +1,187 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counterpart of <code>Do</code> for <code>int</code> values. Elements are
+ * kept in an <code>int[]</code> and expressions work on unboxed values, so no
+ * wrapper objects are created.
+ * 
+ * <ul>
+ * <li><code>Do.withInts(values).select(expression).sum()</code></li>
+ * <li><code>Do.withInts(values).withInitialValue(start).reduce(expression)</code></li>
+ * </ul>
+ * 
+ * @see Do#withInts(int[])
+ */
+public class IntDo extends PrimitiveDo {
+
+    /**
+     * Values to operate on. Only the first <code>size</code> are used.
+     */
+    private final int[] values;
+
+    /**
+     * Intermediate value in reduce operations.
+     */
+    private int reduceResult;
+
+    protected IntDo(final int[] values, final int size) {
+        super(size);
+        this.values = values;
+    }
+
+    /**
+     * Sets values to use in operations. The array is not copied.
+     */
+    public static IntDo with(final int... values) {
+        return new IntDo(values, values.length);
+    }
+
+    /**
+     * @return a new instance containing all values matching the expression.
+     */
+    public IntDo select(final IntBooleanExpression expression) {
+        int[] result = new int[this.size];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (expression.predicate(this.values[i])) {
+                result[count++] = this.values[i];
+            }
+        }
+        return new IntDo(compact(result, count), count);
+    }
+
+    /**
+     * @return a new instance containing all values except those matching the
+     *         expression.
+     */
+    public IntDo reject(final IntBooleanExpression expression) {
+        int[] result = new int[this.size];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (!expression.predicate(this.values[i])) {
+                result[count++] = this.values[i];
+            }
+        }
+        return new IntDo(compact(result, count), count);
+    }
+
+    /**
+     * @return a new instance containing values mapped to a new value by the
+     *         expression.
+     */
+    public IntDo mapTo(final IntMapExpression expression) {
+        int[] result = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            result[i] = expression.transform(this.values[i]);
+        }
+        return new IntDo(result, this.size);
+    }
+
+    /**
+     * Alias for mapTo.
+     */
+    public IntDo map(final IntMapExpression expression) {
+        return mapTo(expression);
+    }
+
+    /**
+     * @return first value matching expression or <code>null</code> if no
+     *         matching value could be found.
+     */
+    public Integer detect(final IntBooleanExpression expression) {
+        for (int i = 0; i < this.size; i++) {
+            if (expression.predicate(this.values[i])) {
+                return this.values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param start
+     *            initial value in a reduce operation.
+     */
+    public IntDo withInitialValue(final int start) {
+        IntDo result = new IntDo(this.values, this.size);
+        result.reduceResult = start;
+        result.hasInitialValue = true;
+        return result;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if no starting value is set
+     */
+    public int reduce(final IntReduceExpression expr)
+            throws IllegalStateException {
+        requireInitialValue();
+
+        for (int i = 0; i < this.size; i++) {
+            this.reduceResult = expr.reduce(this.reduceResult, this.values[i]);
+        }
+
+        return this.reduceResult;
+    }
+
+    /**
+     * @return the sum of the values, accumulated as a <code>long</code> so
+     *         it does not overflow for fewer than 2<sup>32</sup> values.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < this.size; i++) {
+            sum += this.values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return count, sum, minimum, maximum, mean and variance computed in a
+     *         single pass.
+     */
+    public Statistics statistics() {
+        Statistics statistics = new Statistics();
+        for (int i = 0; i < this.size; i++) {
+            statistics.accept(this.values[i]);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    /**
+     * @return the values boxed in a <code>Do</code>, for operations only
+     *         available on objects.
+     */
+    public Do<Integer, Integer> boxed() {
+        List<Integer> result = new ArrayList<Integer>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            result.add(this.values[i]);
+        }
+        return Do.with(result);
+    }
+
+    /*
+     * Expression interfaces.
+     */
+    public static interface IntMapExpression {
+        int transform(int element);
+    }
+
+    public static interface IntBooleanExpression {
+        boolean predicate(int element);
+    }
+
+    public static interface IntReduceExpression {
+        int reduce(int accumulatedValue, int element);
+    }
+}
@@ -0,0 +1,103 @@
+package se.internetapplications.collections.functional;
+
+import java.util.Arrays;
+
+/**
+ * Insert-only hash set of keys using open addressing with linear probing.
+ * The table itself holds only <code>int</code> indices into dense arrays of
+ * keys and their hash codes, so no entry object is created per key and
+ * growing the table never calls <code>hashCode</code> again.
+ */
+final class KeyTable {
+
+    /**
+     * Entry index plus one for each slot, 0 for an empty slot. Kept at most
+     * half full.
+     */
+    private int[] slots;
+
+    private Object[] keys;
+
+    private int[] hashes;
+
+    private int size;
+
+    KeyTable(final int expectedSize) {
+        int capacity = Math.max(4, Math.min(expectedSize, 1 << 16));
+        this.slots = new int[tableSize(capacity)];
+        this.keys = new Object[capacity];
+        this.hashes = new int[capacity];
+    }
+
+    /**
+     * Grows the table so that <code>expectedSize</code> keys fit without
+     * further copying or rehashing.
+     */
+    void ensureCapacity(final int expectedSize) {
+        if (expectedSize > this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, expectedSize);
+            this.hashes = Arrays.copyOf(this.hashes, expectedSize);
+        }
+        int tableSize = tableSize(expectedSize);
+        if (tableSize > this.slots.length) {
+            rehash(tableSize);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the key was added, <code>false</code> if
+     *         an equal key was already present.
+     */
+    boolean add(final Object key) {
+        int hash = spread(key == null ? 0 : key.hashCode());
+        int mask = this.slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int entry = this.slots[slot] - 1;
+            if (entry < 0) {
+                insert(slot, key, hash);
+                return true;
+            }
+            if (this.hashes[entry] == hash) {
+                Object other = this.keys[entry];
+                if (key == null ? other == null : key.equals(other)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void insert(final int slot, final Object key, final int hash) {
+        if (this.size == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+            this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+        }
+        this.keys[this.size] = key;
+        this.hashes[this.size] = hash;
+        this.slots[slot] = ++this.size;
+        if (this.size * 2 > this.slots.length) {
+            rehash(this.slots.length * 2);
+        }
+    }
+
+    private void rehash(final int tableSize) {
+        int[] slots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int entry = 0; entry < this.size; entry++) {
+            int slot = this.hashes[entry] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+        this.slots = slots;
+    }
+
+    private static int tableSize(final int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
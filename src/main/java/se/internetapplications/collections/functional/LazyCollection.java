@@ -0,0 +1,205 @@
+package se.internetapplications.collections.functional;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+
+/**
+ * Read-only view of a source collection with a number of stages applied.
+ * Nothing is evaluated until the view is iterated, and each iteration runs
+ * all stages in a single pass over the source without building intermediate
+ * collections.
+ */
+class LazyCollection<E> extends AbstractCollection<E> {
+
+    private final Collection<?> source;
+
+    private final Stage[] stages;
+
+    private LazyCollection(final Collection<?> source, final Stage[] stages) {
+        this.source = source;
+        this.stages = stages;
+    }
+
+    /**
+     * @return a view of <code>collection</code> with <code>stage</code>
+     *         appended. If <code>collection</code> already is a lazy view the
+     *         stage is fused with its existing stages.
+     */
+    static <E> LazyCollection<E> append(final Collection<?> collection,
+            final Stage stage) {
+        if (collection instanceof LazyCollection<?>) {
+            LazyCollection<?> lazy = (LazyCollection<?>) collection;
+            Stage[] stages = new Stage[lazy.stages.length + 1];
+            System.arraycopy(lazy.stages, 0, stages, 0, lazy.stages.length);
+            stages[lazy.stages.length] = stage;
+            return new LazyCollection<E>(lazy.source, stages);
+        }
+        return new LazyCollection<E>(collection, new Stage[] { stage });
+    }
+
+    /**
+     * @return a view of <code>collection</code> with a filter appended. If
+     *         the last stage of <code>collection</code> is an
+     *         {@link AdaptiveFilter} the filter joins its group, so that the
+     *         two may be reordered.
+     */
+    static <E> LazyCollection<E> filter(final Collection<?> collection,
+            final BooleanExpression<E> expression, final boolean keep) {
+        if (collection instanceof LazyCollection<?>) {
+            LazyCollection<?> lazy = (LazyCollection<?>) collection;
+            int last = lazy.stages.length - 1;
+            if (last >= 0 && lazy.stages[last] instanceof AdaptiveFilter) {
+                Stage[] stages = lazy.stages.clone();
+                stages[last] = ((AdaptiveFilter) stages[last]).and(expression,
+                        keep);
+                return new LazyCollection<E>(lazy.source, stages);
+            }
+        }
+        return append(collection, AdaptiveFilter.of(expression, keep));
+    }
+
+    /**
+     * @return a view of <code>collection</code> with <code>stages</code>
+     *         applied. The array is not copied and must not be modified.
+     */
+    static <E> LazyCollection<E> of(final Collection<?> collection,
+            final Stage[] stages) {
+        return new LazyCollection<E>(collection, stages);
+    }
+
+    /**
+     * Runs all stages on the source and copies the result into
+     * <code>target</code>.
+     */
+    <C extends Collection<? super E>> C drainTo(final C target) {
+        return drain(this.source, this.stages, target);
+    }
+
+    /**
+     * Runs all elements of <code>source</code> through <code>stages</code>
+     * in a single loop, adding the results to <code>target</code>. Random
+     * access lists are traversed by index.
+     */
+    @SuppressWarnings("unchecked")
+    static <E, C extends Collection<? super E>> C drain(
+            final Collection<?> source, final Stage[] original, final C target) {
+        Stage[] stages = Stage.fresh(original);
+        boolean stateful = Stage.stateful(stages);
+        if (stateful && Stage.exhausted(stages)) {
+            return target;
+        }
+
+        if (source instanceof List<?> && source instanceof RandomAccess) {
+            List<?> list = (List<?>) source;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                Object element = Stage.applyAll(stages, list.get(i));
+                if (element == Stage.END) {
+                    break;
+                }
+                if (element != Stage.REJECTED) {
+                    target.add((E) element);
+                }
+                if (stateful && Stage.exhausted(stages)) {
+                    break;
+                }
+            }
+        } else {
+            for (Object o : source) {
+                Object element = Stage.applyAll(stages, o);
+                if (element == Stage.END) {
+                    break;
+                }
+                if (element != Stage.REJECTED) {
+                    target.add((E) element);
+                }
+                if (stateful && Stage.exhausted(stages)) {
+                    break;
+                }
+            }
+        }
+        return target;
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final Iterator<?> it = LazyCollection.this.source.iterator();
+
+            private final Stage[] stages = Stage
+                    .fresh(LazyCollection.this.stages);
+
+            private final boolean stateful = Stage.stateful(this.stages);
+
+            private boolean ended = this.stateful
+                    && Stage.exhausted(this.stages);
+
+            private Object next = Stage.REJECTED;
+
+            public boolean hasNext() {
+                while (this.next == Stage.REJECTED && !this.ended
+                        && this.it.hasNext()) {
+                    this.next = Stage.applyAll(this.stages, this.it.next());
+                    if (this.next == Stage.END) {
+                        this.next = Stage.REJECTED;
+                        this.ended = true;
+                    } else if (this.stateful) {
+                        this.ended = Stage.exhausted(this.stages);
+                    }
+                }
+                return this.next != Stage.REJECTED;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                E result = (E) this.next;
+                this.next = Stage.REJECTED;
+                return result;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    Collection<?> source() {
+        return this.source;
+    }
+
+    Stage[] stages() {
+        return this.stages;
+    }
+
+    /**
+     * Note that the size of a lazy view is only known after running all
+     * stages.
+     */
+    public int size() {
+        int size = 0;
+        for (Iterator<E> it = iterator(); it.hasNext(); it.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    public Object[] toArray() {
+        return drainTo(new ArrayList<E>()).toArray();
+    }
+
+    public <T> T[] toArray(final T[] a) {
+        return drainTo(new ArrayList<E>()).toArray(a);
+    }
+}
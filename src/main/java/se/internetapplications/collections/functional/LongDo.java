@@ -0,0 +1,187 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counterpart of <code>Do</code> for <code>long</code> values. Elements are
+ * kept in an <code>long[]</code> and expressions work on unboxed values, so no
+ * wrapper objects are created.
+ * 
+ * <ul>
+ * <li><code>Do.withLongs(values).select(expression).sum()</code></li>
+ * <li><code>Do.withLongs(values).withInitialValue(start).reduce(expression)</code></li>
+ * </ul>
+ * 
+ * @see Do#withLongs(long[])
+ */
+public class LongDo extends PrimitiveDo {
+
+    /**
+     * Values to operate on. Only the first <code>size</code> are used.
+     */
+    private final long[] values;
+
+    /**
+     * Intermediate value in reduce operations.
+     */
+    private long reduceResult;
+
+    protected LongDo(final long[] values, final int size) {
+        super(size);
+        this.values = values;
+    }
+
+    /**
+     * Sets values to use in operations. The array is not copied.
+     */
+    public static LongDo with(final long... values) {
+        return new LongDo(values, values.length);
+    }
+
+    /**
+     * @return a new instance containing all values matching the expression.
+     */
+    public LongDo select(final LongBooleanExpression expression) {
+        long[] result = new long[this.size];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (expression.predicate(this.values[i])) {
+                result[count++] = this.values[i];
+            }
+        }
+        return new LongDo(compact(result, count), count);
+    }
+
+    /**
+     * @return a new instance containing all values except those matching the
+     *         expression.
+     */
+    public LongDo reject(final LongBooleanExpression expression) {
+        long[] result = new long[this.size];
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (!expression.predicate(this.values[i])) {
+                result[count++] = this.values[i];
+            }
+        }
+        return new LongDo(compact(result, count), count);
+    }
+
+    /**
+     * @return a new instance containing values mapped to a new value by the
+     *         expression.
+     */
+    public LongDo mapTo(final LongMapExpression expression) {
+        long[] result = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            result[i] = expression.transform(this.values[i]);
+        }
+        return new LongDo(result, this.size);
+    }
+
+    /**
+     * Alias for mapTo.
+     */
+    public LongDo map(final LongMapExpression expression) {
+        return mapTo(expression);
+    }
+
+    /**
+     * @return first value matching expression or <code>null</code> if no
+     *         matching value could be found.
+     */
+    public Long detect(final LongBooleanExpression expression) {
+        for (int i = 0; i < this.size; i++) {
+            if (expression.predicate(this.values[i])) {
+                return this.values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param start
+     *            initial value in a reduce operation.
+     */
+    public LongDo withInitialValue(final long start) {
+        LongDo result = new LongDo(this.values, this.size);
+        result.reduceResult = start;
+        result.hasInitialValue = true;
+        return result;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if no starting value is set
+     */
+    public long reduce(final LongReduceExpression expr)
+            throws IllegalStateException {
+        requireInitialValue();
+
+        for (int i = 0; i < this.size; i++) {
+            this.reduceResult = expr.reduce(this.reduceResult, this.values[i]);
+        }
+
+        return this.reduceResult;
+    }
+
+    /**
+     * @return the sum of the values. Like <code>long</code> addition it
+     *         overflows silently.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < this.size; i++) {
+            sum += this.values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return count, sum, minimum, maximum, mean and variance computed in a
+     *         single pass.
+     */
+    public Statistics statistics() {
+        Statistics statistics = new Statistics();
+        for (int i = 0; i < this.size; i++) {
+            statistics.accept(this.values[i]);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    /**
+     * @return the values boxed in a <code>Do</code>, for operations only
+     *         available on objects.
+     */
+    public Do<Long, Long> boxed() {
+        List<Long> result = new ArrayList<Long>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            result.add(this.values[i]);
+        }
+        return Do.with(result);
+    }
+
+    /*
+     * Expression interfaces.
+     */
+    public static interface LongMapExpression {
+        long transform(long element);
+    }
+
+    public static interface LongBooleanExpression {
+        boolean predicate(long element);
+    }
+
+    public static interface LongReduceExpression {
+        long reduce(long accumulatedValue, long element);
+    }
+}
@@ -0,0 +1,52 @@
+package se.internetapplications.collections.functional;
+
+/**
+ * Two values joined together, e.g. matching elements from a join.
+ * 
+ * @see Do#join(Do, Do.MapExpression, Do.MapExpression)
+ */
+public final class Pair<L, R> {
+
+    private final L left;
+
+    private final R right;
+
+    public Pair(final L left, final R right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public L left() {
+        return this.left;
+    }
+
+    public R right() {
+        return this.right;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Pair<?, ?>)) {
+            return false;
+        }
+        Pair<?, ?> other = (Pair<?, ?>) obj;
+        return (this.left == null ? other.left == null : this.left
+                .equals(other.left))
+                && (this.right == null ? other.right == null : this.right
+                        .equals(other.right));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (this.left == null ? 0 : this.left.hashCode())
+                + (this.right == null ? 0 : this.right.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.left + ", " + this.right + ")";
+    }
+}
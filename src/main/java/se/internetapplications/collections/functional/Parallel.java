@@ -0,0 +1,201 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import se.internetapplications.collections.functional.Do.CombineExpression;
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Runs stages over a random access list on a <code>ForkJoinPool</code>. The
+ * list is split into contiguous chunks which are processed concurrently, and
+ * the chunk results are concatenated in encounter order.
+ */
+final class Parallel {
+
+    /**
+     * Collections smaller than this are processed sequentially since the
+     * overhead of forking outweighs the gain.
+     */
+    static final int MINIMUM_SIZE = 2048;
+
+    /**
+     * Smallest number of elements handled by a single task.
+     */
+    private static final int MINIMUM_CHUNK = 512;
+
+    private Parallel() {
+    }
+
+    /**
+     * @return <code>true</code> if <code>collection</code> can be split for
+     *         parallel processing on <code>pool</code>.
+     */
+    static boolean supports(final Collection<?> collection,
+            final ForkJoinPool pool) {
+        return pool != null && collection instanceof List<?>
+                && collection instanceof RandomAccess
+                && collection.size() >= MINIMUM_SIZE;
+    }
+
+    /**
+     * @return <code>true</code> if <code>stages</code> can be run over
+     *         <code>collection</code> in parallel on <code>pool</code>.
+     *         Stateful stages depend on encounter order and are always run
+     *         sequentially.
+     */
+    static boolean supports(final Collection<?> collection,
+            final Stage[] stages, final ForkJoinPool pool) {
+        return supports(collection, pool) && !Stage.stateful(stages);
+    }
+
+    /**
+     * @return a new list with the result of running all elements of
+     *         <code>source</code> through <code>stages</code>, in encounter
+     *         order.
+     */
+    static <S> List<S> apply(final ForkJoinPool pool, final List<?> source,
+            final Stage[] stages) {
+        final List<Chunk> chunks = split(pool, source, stages);
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.result.size();
+        }
+        List<S> result = new ArrayList<S>(size);
+        for (Chunk chunk : chunks) {
+            @SuppressWarnings("unchecked")
+            List<S> part = (List<S>) chunk.result;
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    /**
+     * Reduces each chunk of <code>source</code> into its own accumulator and
+     * combines the partial results in encounter order.
+     */
+    static <E, R> R reduce(final ForkJoinPool pool, final List<?> source,
+            final Stage[] stages, final InitialValueExpression<R> initial,
+            final ReduceExpression<E, R> expr,
+            final CombineExpression<R> combiner) {
+        List<Chunk> chunks = split(pool, source, stages);
+        final List<ReduceChunk<E, R>> reductions = new ArrayList<ReduceChunk<E, R>>(
+                chunks.size());
+        for (Chunk chunk : chunks) {
+            reductions.add(new ReduceChunk<E, R>(chunk, initial, expr));
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            protected void compute() {
+                invokeAll(reductions);
+            }
+        });
+
+        R result = reductions.get(0).result;
+        for (int i = 1; i < reductions.size(); i++) {
+            result = combiner.combine(result, reductions.get(i).result);
+        }
+        return result;
+    }
+
+    private static List<Chunk> split(final ForkJoinPool pool,
+            final List<?> source, final Stage[] stages) {
+        int size = source.size();
+        int chunkSize = Math.max(MINIMUM_CHUNK, (size - 1)
+                / (pool.getParallelism() * 4) + 1);
+
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int from = 0; from < size; from += chunkSize) {
+            chunks.add(new Chunk(source, stages, from, Math.min(size, from
+                    + chunkSize)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Reduces the elements of a chunk into a new accumulator.
+     */
+    private static final class ReduceChunk<E, R> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk chunk;
+
+        private final InitialValueExpression<R> initial;
+
+        private final ReduceExpression<E, R> expr;
+
+        private R result;
+
+        ReduceChunk(final Chunk chunk, final InitialValueExpression<R> initial,
+                final ReduceExpression<E, R> expr) {
+            this.chunk = chunk;
+            this.initial = initial;
+            this.expr = expr;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected void compute() {
+            Chunk chunk = this.chunk;
+            R result = this.initial.initialValue();
+            for (int i = chunk.from; i < chunk.to; i++) {
+                Object element = Stage.applyAll(chunk.stages, chunk.source
+                        .get(i));
+                if (element != Stage.REJECTED) {
+                    result = this.expr.reduce(result, (E) element);
+                }
+            }
+            this.result = result;
+        }
+    }
+
+    /**
+     * Processes the elements between <code>from</code> (inclusive) and
+     * <code>to</code> (exclusive).
+     */
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<?> source;
+
+        private final Stage[] stages;
+
+        private final int from;
+
+        private final int to;
+
+        private List<Object> result;
+
+        Chunk(final List<?> source, final Stage[] stages, final int from,
+                final int to) {
+            this.source = source;
+            this.stages = stages;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            List<Object> result = new ArrayList<Object>(this.to - this.from);
+            for (int i = this.from; i < this.to; i++) {
+                Object element = Stage.applyAll(this.stages, this.source.get(i));
+                if (element != Stage.REJECTED) {
+                    result.add(element);
+                }
+            }
+            this.result = result;
+        }
+    }
+}
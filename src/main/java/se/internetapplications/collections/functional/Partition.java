@@ -0,0 +1,32 @@
+package se.internetapplications.collections.functional;
+
+/**
+ * Result of splitting a collection in two with a single pass.
+ * 
+ * @see Do#partition(Do.BooleanExpression)
+ */
+public class Partition<E> {
+
+    private final Do<E, E> selected;
+
+    private final Do<E, E> rejected;
+
+    Partition(final Do<E, E> selected, final Do<E, E> rejected) {
+        this.selected = selected;
+        this.rejected = rejected;
+    }
+
+    /**
+     * @return elements matching the expression, in encounter order.
+     */
+    public Do<E, E> selected() {
+        return this.selected;
+    }
+
+    /**
+     * @return elements not matching the expression, in encounter order.
+     */
+    public Do<E, E> rejected() {
+        return this.rejected;
+    }
+}
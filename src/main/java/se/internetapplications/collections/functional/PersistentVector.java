@@ -0,0 +1,176 @@
+package se.internetapplications.collections.functional;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list where adding elements returns a new version that shares
+ * structure with the old one. Elements are stored in a 32-way trie with the
+ * last, partially filled, block kept in a separate tail array, so
+ * <code>plus</code> and <code>get</code> run in O(log32 n) time.
+ * <p>
+ * Since instances never change they can be read by other threads while new
+ * versions are being built from them.
+ * </p>
+ *
+ * @see Do#persistent()
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements
+        RandomAccess {
+
+    private static final int BITS = 5;
+
+    private static final int WIDTH = 1 << BITS;
+
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentVector<Object> EMPTY = new PersistentVector<Object>(
+            0, BITS, new Node(new Object[WIDTH]), new Object[0]);
+
+    private final int size;
+
+    /**
+     * Number of bits to shift an index by at the root level.
+     */
+    private final int shift;
+
+    private final Node root;
+
+    private final Object[] tail;
+
+    private PersistentVector(final int size, final int shift,
+            final Node root, final Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * @return a vector containing the elements of <code>collection</code>,
+     *         or <code>collection</code> itself if it already is one.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> of(
+            final Collection<? extends E> collection) {
+        if (collection instanceof PersistentVector<?>) {
+            return (PersistentVector<E>) collection;
+        }
+        PersistentVector<E> result = empty();
+        for (E element : collection) {
+            result = result.plus(element);
+        }
+        return result;
+    }
+
+    /**
+     * @return a new version with <code>element</code> appended.
+     */
+    public PersistentVector<E> plus(final E element) {
+        if (this.size - tailOffset() < WIDTH) {
+            Object[] tail = Arrays.copyOf(this.tail, this.tail.length + 1);
+            tail[this.tail.length] = element;
+            return new PersistentVector<E>(this.size + 1, this.shift,
+                    this.root, tail);
+        }
+
+        Node tailNode = new Node(this.tail);
+        if ((this.size >>> BITS) > (1 << this.shift)) {
+            Node root = new Node(new Object[WIDTH]);
+            root.array[0] = this.root;
+            root.array[1] = newPath(this.shift, tailNode);
+            return new PersistentVector<E>(this.size + 1, this.shift + BITS,
+                    root, new Object[] { element });
+        }
+        return new PersistentVector<E>(this.size + 1, this.shift, pushTail(
+                this.shift, this.root, tailNode), new Object[] { element });
+    }
+
+    /**
+     * @return a new version with <code>elements</code> appended.
+     */
+    @SafeVarargs
+    public final PersistentVector<E> plusAll(final E... elements) {
+        PersistentVector<E> result = this;
+        for (int i = 0; i < elements.length; i++) {
+            result = result.plus(elements[i]);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(final int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + this.size);
+        }
+        return (E) arrayFor(index)[index & MASK];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return index of the first element stored in the tail.
+     */
+    private int tailOffset() {
+        if (this.size < WIDTH) {
+            return 0;
+        }
+        return ((this.size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] arrayFor(final int index) {
+        if (index >= tailOffset()) {
+            return this.tail;
+        }
+        Node node = this.root;
+        for (int level = this.shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    /**
+     * Copies the path from <code>parent</code> down to the position of the
+     * current tail and attaches <code>tailNode</code> there.
+     */
+    private Node pushTail(final int level, final Node parent,
+            final Node tailNode) {
+        int index = ((this.size - 1) >>> level) & MASK;
+        Object[] array = parent.array.clone();
+        if (level == BITS) {
+            array[index] = tailNode;
+        } else {
+            Node child = (Node) parent.array[index];
+            array[index] = child != null ? pushTail(level - BITS, child,
+                    tailNode) : newPath(level - BITS, tailNode);
+        }
+        return new Node(array);
+    }
+
+    private static Node newPath(final int level, final Node node) {
+        if (level == 0) {
+            return node;
+        }
+        Node path = new Node(new Object[WIDTH]);
+        path.array[0] = newPath(level - BITS, node);
+        return path;
+    }
+
+    private static final class Node {
+        final Object[] array;
+
+        Node(final Object[] array) {
+            this.array = array;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * A chain of operations defined once, without a source, and then applied to
+ * any number of collections.
+ * 
+ * <pre>
+ * PreparedPipeline&lt;String, Integer&gt; lengths = PreparedPipeline.of(String.class)
+ *         .select(notEmpty).mapTo(length);
+ * ...
+ * Integer total = lengths.apply(batch).withInitialValue(0).reduce(sum);
+ * </pre>
+ * 
+ * Pipelines are immutable. The operations are prepared as an array of stages
+ * when the pipeline is built, so <code>apply</code> only runs a single loop
+ * over the source. A pipeline can be shared and applied concurrently by
+ * several threads as long as its expressions are thread-safe.
+ */
+public final class PreparedPipeline<E, S> {
+
+    private static final int UNFUSABLE = -1;
+
+    private final Stage[] stages;
+
+    /**
+     * Kind of each stage as defined by <code>FusedLoop</code>, or
+     * <code>UNFUSABLE</code>.
+     */
+    private final int[] kinds;
+
+    /**
+     * The expression of each stage, or <code>null</code>.
+     */
+    private final Object[] expressions;
+
+    /**
+     * The compiled loop, or <code>null</code> when the stages are
+     * interpreted.
+     */
+    private final BiConsumer<Collection<?>, Collection<Object>> loop;
+
+    private PreparedPipeline(final Stage[] stages, final int[] kinds,
+            final Object[] expressions,
+            final BiConsumer<Collection<?>, Collection<Object>> loop) {
+        this.stages = stages;
+        this.kinds = kinds;
+        this.expressions = expressions;
+        this.loop = loop;
+    }
+
+    /**
+     * @return an empty pipeline for elements of the given type.
+     */
+    public static <E> PreparedPipeline<E, E> of(final Class<E> type) {
+        return start();
+    }
+
+    /**
+     * @return an empty pipeline.
+     */
+    public static <E> PreparedPipeline<E, E> start() {
+        return new PreparedPipeline<E, E>(Stage.NONE, new int[0],
+                new Object[0], null);
+    }
+
+    /**
+     * @see Do#select(BooleanExpression)
+     */
+    public PreparedPipeline<E, S> select(final BooleanExpression<S> expression) {
+        return then(Stage.select(expression), FusedLoop.SELECT, expression);
+    }
+
+    /**
+     * @see Do#reject(BooleanExpression)
+     */
+    public PreparedPipeline<E, S> reject(final BooleanExpression<S> expression) {
+        return then(Stage.reject(expression), FusedLoop.REJECT, expression);
+    }
+
+    /**
+     * @see Do#mapTo(MapExpression)
+     */
+    public <T> PreparedPipeline<E, T> mapTo(final MapExpression<S, T> expression) {
+        return then(Stage.map(expression), FusedLoop.MAP, expression);
+    }
+
+    /**
+     * @see Do#limit(int)
+     */
+    public PreparedPipeline<E, S> limit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: "
+                    + limit);
+        }
+        return then(Stage.limit(limit), UNFUSABLE, null);
+    }
+
+    /**
+     * @see Do#takeWhile(BooleanExpression)
+     */
+    public PreparedPipeline<E, S> takeWhile(
+            final BooleanExpression<S> expression) {
+        return then(Stage.takeWhile(expression), UNFUSABLE, null);
+    }
+
+    /**
+     * @see Do#dropWhile(BooleanExpression)
+     */
+    public PreparedPipeline<E, S> dropWhile(
+            final BooleanExpression<S> expression) {
+        return then(Stage.dropWhile(expression), UNFUSABLE, null);
+    }
+
+    /**
+     * Runs the pipeline over <code>source</code> in a single pass.
+     * 
+     * @return the result, evaluated eagerly.
+     */
+    public Do<S, S> apply(final Collection<? extends E> source) {
+        if (this.loop != null) {
+            List<Object> result = new ArrayList<Object>();
+            this.loop.accept(source, result);
+            @SuppressWarnings("unchecked")
+            List<S> typed = (List<S>) (List<?>) result;
+            return Do.with(typed);
+        }
+        return Do.with(LazyCollection.drain(source, this.stages,
+                new ArrayList<S>()));
+    }
+
+    /**
+     * Compiles the pipeline into a loop of its own. The expressions are
+     * called from call sites that no other pipeline uses, so the JIT can
+     * inline them even when the shared loop in <code>Do</code> sees too many
+     * different expression classes to do so.
+     * <p>
+     * Only pipelines of at most six <code>select</code>, <code>reject</code>
+     * and <code>mapTo</code> operations can be compiled. Compiling is
+     * expensive and meant for long-lived pipelines applied many times.
+     * </p>
+     * 
+     * @return a compiled copy of this pipeline, or this pipeline if it cannot
+     *         be compiled.
+     */
+    public PreparedPipeline<E, S> compile() {
+        if (this.loop != null || this.kinds.length > FusedLoop.SLOTS) {
+            return this;
+        }
+        for (int i = 0; i < this.kinds.length; i++) {
+            if (this.kinds[i] == UNFUSABLE) {
+                return this;
+            }
+        }
+        BiConsumer<Collection<?>, Collection<Object>> loop = FusedLoop
+                .compile(this.kinds, this.expressions);
+        if (loop == null) {
+            return this;
+        }
+        return new PreparedPipeline<E, S>(this.stages, this.kinds,
+                this.expressions, loop);
+    }
+
+    /**
+     * @return <code>true</code> if the pipeline runs in a compiled loop.
+     * @see #compile()
+     */
+    public boolean isCompiled() {
+        return this.loop != null;
+    }
+
+    /**
+     * @return a lazy view of the pipeline applied to <code>source</code>,
+     *         evaluated every time it is iterated.
+     * @see Do#lazy()
+     */
+    public Do<S, S> applyLazily(final Collection<? extends E> source) {
+        return Do.with(LazyCollection.<S> of(source, this.stages)).lazy();
+    }
+
+    /**
+     * @return the class of the compiled loop, or <code>null</code>.
+     */
+    Class<?> loopClass() {
+        return this.loop == null ? null : this.loop.getClass();
+    }
+
+    private <T> PreparedPipeline<E, T> then(final Stage stage,
+            final int kind, final Object expression) {
+        int length = this.stages.length;
+        Stage[] stages = Arrays.copyOf(this.stages, length + 1);
+        stages[length] = stage;
+        int[] kinds = Arrays.copyOf(this.kinds, length + 1);
+        kinds[length] = kind;
+        Object[] expressions = Arrays.copyOf(this.expressions, length + 1);
+        expressions[length] = expression;
+        return new PreparedPipeline<E, T>(stages, kinds, expressions, null);
+    }
+}
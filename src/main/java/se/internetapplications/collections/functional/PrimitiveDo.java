@@ -0,0 +1,70 @@
+package se.internetapplications.collections.functional;
+
+import java.lang.reflect.Array;
+
+/**
+ * State and buffer handling shared by the primitive counterparts of
+ * <code>Do</code>. Subclasses keep their values in an array of their own
+ * primitive type, of which only the first <code>size</code> are used, so
+ * loops over the values stay monomorphic and unboxed.
+ * 
+ * @see IntDo
+ * @see LongDo
+ * @see DoubleDo
+ */
+abstract class PrimitiveDo {
+
+    /**
+     * Number of values used from the start of the array.
+     */
+    final int size;
+
+    /**
+     * Whether <code>withInitialValue</code> has been called.
+     */
+    boolean hasInitialValue;
+
+    PrimitiveDo(final int size) {
+        this.size = size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if no starting value is set
+     */
+    void requireInitialValue() throws IllegalStateException {
+        if (!this.hasInitialValue) {
+            throw new IllegalStateException("Must set starting value before "
+                    + "reducing. Use 'withInitialValue'");
+        }
+    }
+
+    /**
+     * Filter results are collected in a buffer as large as the source. When
+     * few values were kept the buffer is copied to their count, so the
+     * result does not hold on to memory it does not use.
+     * 
+     * @param buffer
+     *            a primitive array
+     * @return <code>buffer</code> or a copy of its first <code>count</code>
+     *         values.
+     */
+    @SuppressWarnings("unchecked")
+    static <A> A compact(final A buffer, final int count) {
+        if (count >= Array.getLength(buffer) / 2) {
+            return buffer;
+        }
+        A copy = (A) Array.newInstance(buffer.getClass().getComponentType(),
+                count);
+        System.arraycopy(buffer, 0, copy, 0, count);
+        return copy;
+    }
+}
@@ -0,0 +1,270 @@
+package se.internetapplications.collections.functional;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Approximate quantiles of a stream of numbers in a small, bounded amount of
+ * memory, using a KLL sketch.
+ * <p>
+ * Values are kept in a hierarchy of compactors. When a level is full it is
+ * sorted and every other value, starting at a random offset, is promoted to
+ * the level above with twice the weight. Lower levels get smaller
+ * capacities, so with parameter <em>k</em> the sketch keeps O(<em>k</em>)
+ * values and ranks are off by roughly 1.7 / <em>k</em> of the count, e.g.
+ * about 1% for the default <em>k</em> = 200. Sketches can be merged, so
+ * partial sketches from parallel chunks combine into the sketch of the
+ * whole collection.
+ * </p>
+ * 
+ * @see ReduceToQuantileSketch
+ */
+public final class QuantileSketch {
+
+    /**
+     * Capacity of each level relative to the level above it.
+     */
+    private static final double DECAY = 2.0 / 3;
+
+    private final int k;
+
+    private double[][] levels;
+
+    private int[] sizes;
+
+    private int height;
+
+    private long count;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    /**
+     * @param k
+     *            capacity of the top level, at least 8. Larger values give
+     *            more accurate results using more memory.
+     */
+    public QuantileSketch(final int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be at least 8: " + k);
+        }
+        this.k = k;
+        this.levels = new double[][] { new double[k] };
+        this.sizes = new int[1];
+        this.height = 1;
+    }
+
+    public void offer(final double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("NaN cannot be ranked");
+        }
+        append(0, value);
+        this.count++;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+        compress();
+    }
+
+    /**
+     * Adds all values counted by <code>other</code> to this sketch.
+     */
+    public void merge(final QuantileSketch other) {
+        for (int level = 0; level < other.height; level++) {
+            while (level >= this.height) {
+                grow();
+            }
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        this.count += other.count;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+        compress();
+    }
+
+    /**
+     * @param fraction
+     *            between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return approximate value at the given fraction of the sorted values,
+     *         or <code>NaN</code> if no values have been offered.
+     */
+    public double quantile(final double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException(
+                    "fraction must be between 0 and 1: " + fraction);
+        }
+        if (this.count == 0) {
+            return Double.NaN;
+        }
+        if (fraction == 0) {
+            return this.min;
+        }
+        if (fraction == 1) {
+            return this.max;
+        }
+
+        int retained = 0;
+        for (int level = 0; level < this.height; level++) {
+            retained += this.sizes[level];
+        }
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int level = 0; level < this.height; level++) {
+            for (int i = 0; i < this.sizes[level]; i++) {
+                values[n] = this.levels[level][i];
+                weights[n++] = 1L << level;
+            }
+        }
+        sortByValue(values, weights);
+
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += weights[i];
+        }
+        double rank = fraction * total;
+        long cumulative = 0;
+        for (int i = 0; i < n; i++) {
+            cumulative += weights[i];
+            if (cumulative >= rank) {
+                return values[i];
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * @return number of values offered.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getMin() {
+        return this.min;
+    }
+
+    public double getMax() {
+        return this.max;
+    }
+
+    private int capacity(final int level) {
+        int depth = this.height - level - 1;
+        return Math.max(2, (int) Math.ceil(this.k * Math.pow(DECAY, depth)));
+    }
+
+    private void append(final int level, final double value) {
+        double[] items = this.levels[level];
+        if (this.sizes[level] == items.length) {
+            items = Arrays.copyOf(items, Math.max(2, items.length * 2));
+            this.levels[level] = items;
+        }
+        items[this.sizes[level]++] = value;
+    }
+
+    /**
+     * Compacts every level that has reached its capacity, from the bottom
+     * up.
+     */
+    private void compress() {
+        for (int level = 0; level < this.height; level++) {
+            if (this.sizes[level] >= capacity(level)) {
+                compact(level);
+            }
+        }
+    }
+
+    /**
+     * Promotes every other value of a sorted level to the level above. If the
+     * level has an odd number of values the largest stays behind.
+     */
+    private void compact(final int level) {
+        if (level + 1 == this.height) {
+            grow();
+        }
+        double[] items = this.levels[level];
+        int size = this.sizes[level];
+        Arrays.sort(items, 0, size);
+
+        int pairs = size & ~1;
+        int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+        for (int i = offset; i < pairs; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if (size > pairs) {
+            items[0] = items[size - 1];
+            this.sizes[level] = 1;
+        } else {
+            this.sizes[level] = 0;
+        }
+        trim(level);
+    }
+
+    /**
+     * Adds a level on top. The new level gets the full capacity
+     * <em>k</em> and every level below it moves one step down, so their
+     * buffers are shrunk to their new capacities.
+     */
+    private void grow() {
+        this.levels = Arrays.copyOf(this.levels, this.height + 1);
+        this.sizes = Arrays.copyOf(this.sizes, this.height + 1);
+        this.height++;
+        this.levels[this.height - 1] = new double[capacity(this.height - 1)];
+        for (int level = 0; level < this.height - 1; level++) {
+            trim(level);
+        }
+    }
+
+    /**
+     * Shrinks the buffer of a level to its capacity, or to the number of
+     * values it holds if that is larger.
+     */
+    private void trim(final int level) {
+        int length = Math.max(this.sizes[level], capacity(level));
+        if (this.levels[level].length > length) {
+            this.levels[level] = Arrays.copyOf(this.levels[level], length);
+        }
+    }
+
+    /**
+     * @return number of values the buffers of all levels can hold.
+     */
+    int allocated() {
+        int allocated = 0;
+        for (int level = 0; level < this.height; level++) {
+            allocated += this.levels[level].length;
+        }
+        return allocated;
+    }
+
+    /**
+     * Sorts values ascending, moving their weights along.
+     */
+    private static void sortByValue(final double[] values, final long[] weights) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer left, final Integer right) {
+                return Double.compare(values[left], values[right]);
+            }
+        });
+
+        double[] sortedValues = new double[values.length];
+        long[] sortedWeights = new long[weights.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedValues[i] = values[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, values.length);
+        System.arraycopy(sortedWeights, 0, weights, 0, weights.length);
+    }
+}
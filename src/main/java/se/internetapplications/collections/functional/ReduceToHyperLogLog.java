@@ -0,0 +1,80 @@
+package se.internetapplications.collections.functional;
+
+import se.internetapplications.collections.functional.Do.CombineExpression;
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Counts distinct elements approximately using a {@link HyperLogLog}
+ * sketch:
+ * <code>Do.with(users).mapTo(HyperLogLog.class).parallel().reduce(counter, counter, counter).estimate()</code>.
+ * <p>
+ * Elements are identified by a 64 bit key if a key expression is given,
+ * otherwise by their <code>hashCode</code>, which is only accurate up to a
+ * few million distinct elements.
+ * </p>
+ */
+public class ReduceToHyperLogLog<E> implements
+        ReduceExpression<E, HyperLogLog>, CombineExpression<HyperLogLog>,
+        InitialValueExpression<HyperLogLog> {
+
+    private final int precision;
+
+    private final MapExpression<E, Long> key;
+
+    /**
+     * Uses precision 14, i.e. 16 KB per sketch and about 0.8% error.
+     */
+    public ReduceToHyperLogLog() {
+        this(14);
+    }
+
+    /**
+     * @param precision
+     *            precision of the sketches created
+     * @see HyperLogLog#HyperLogLog(int)
+     */
+    public ReduceToHyperLogLog(final int precision) {
+        this(precision, null);
+    }
+
+    /**
+     * Uses precision 14 and identifies elements by the 64 bit key returned
+     * by the expression.
+     */
+    public ReduceToHyperLogLog(final MapExpression<E, Long> key) {
+        this(14, key);
+    }
+
+    /**
+     * @param precision
+     *            precision of the sketches created
+     * @param key
+     *            64 bit key identifying an element, or <code>null</code> to
+     *            use the <code>hashCode</code> of the elements
+     */
+    public ReduceToHyperLogLog(final int precision,
+            final MapExpression<E, Long> key) {
+        this.precision = precision;
+        this.key = key;
+    }
+
+    public HyperLogLog reduce(final HyperLogLog sketch, final E element) {
+        if (this.key == null) {
+            sketch.offer(element);
+        } else {
+            sketch.offer((Object) this.key.transform(element));
+        }
+        return sketch;
+    }
+
+    public HyperLogLog combine(final HyperLogLog left, final HyperLogLog right) {
+        left.merge(right);
+        return left;
+    }
+
+    public HyperLogLog initialValue() {
+        return new HyperLogLog(this.precision);
+    }
+}
@@ -0,0 +1,51 @@
+package se.internetapplications.collections.functional;
+
+import se.internetapplications.collections.functional.Do.CombineExpression;
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Collects numbers into a {@link QuantileSketch} for approximate quantiles:
+ * <code>Do.with(latencies).mapTo(QuantileSketch.class).parallel().reduce(sketch, sketch, sketch).quantile(0.99)</code>.
+ * <code>null</code> elements are ignored.
+ */
+public class ReduceToQuantileSketch<E extends Number> implements
+        ReduceExpression<E, QuantileSketch>,
+        CombineExpression<QuantileSketch>,
+        InitialValueExpression<QuantileSketch> {
+
+    private final int k;
+
+    /**
+     * Uses <em>k</em> = 200, i.e. about 1% rank error.
+     */
+    public ReduceToQuantileSketch() {
+        this(200);
+    }
+
+    /**
+     * @param k
+     *            accuracy parameter of the sketches created
+     * @see QuantileSketch#QuantileSketch(int)
+     */
+    public ReduceToQuantileSketch(final int k) {
+        this.k = k;
+    }
+
+    public QuantileSketch reduce(final QuantileSketch sketch, final E element) {
+        if (element != null) {
+            sketch.offer(element.doubleValue());
+        }
+        return sketch;
+    }
+
+    public QuantileSketch combine(final QuantileSketch left,
+            final QuantileSketch right) {
+        left.merge(right);
+        return left;
+    }
+
+    public QuantileSketch initialValue() {
+        return new QuantileSketch(this.k);
+    }
+}
@@ -0,0 +1,57 @@
+package se.internetapplications.collections.functional;
+
+import se.internetapplications.collections.functional.Do.CombineExpression;
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+/**
+ * Computes {@link Statistics} of a numeric value of each element in one
+ * pass:
+ * <code>Do.with(orders).mapTo(Statistics.class).parallel().reduce(stats, stats, stats).getMean()</code>.
+ * Elements, or extracted values, that are <code>null</code> are ignored.
+ */
+public class ReduceToStatistics<E> implements ReduceExpression<E, Statistics>,
+        CombineExpression<Statistics>, InitialValueExpression<Statistics> {
+
+    private final MapExpression<E, ? extends Number> value;
+
+    /**
+     * For elements that are numbers themselves.
+     */
+    public static <N extends Number> ReduceToStatistics<N> ofNumbers() {
+        return new ReduceToStatistics<N>(new MapExpression<N, N>() {
+            public N transform(final N element) {
+                return element;
+            }
+        });
+    }
+
+    /**
+     * @param value
+     *            extracts the number to compute statistics of from each
+     *            element
+     */
+    public ReduceToStatistics(final MapExpression<E, ? extends Number> value) {
+        this.value = value;
+    }
+
+    public Statistics reduce(final Statistics statistics, final E element) {
+        if (element != null) {
+            Number number = this.value.transform(element);
+            if (number != null) {
+                statistics.accept(number.doubleValue());
+            }
+        }
+        return statistics;
+    }
+
+    public Statistics combine(final Statistics left, final Statistics right) {
+        left.merge(right);
+        return left;
+    }
+
+    public Statistics initialValue() {
+        return new Statistics();
+    }
+}
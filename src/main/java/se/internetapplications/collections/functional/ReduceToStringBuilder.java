@@ -1,13 +1,22 @@
 package se.internetapplications.collections.functional;
 
+import se.internetapplications.collections.functional.Do.CombineExpression;
+import se.internetapplications.collections.functional.Do.InitialValueExpression;
 import se.internetapplications.collections.functional.Do.ReduceExpression;
 
 /**
  * Uses a <code>StringBuilder</code> to join a collection of
  * <code>String</code>s using the given separator..
+ * <p>
+ * Can also be used in parallel reductions, where it creates a new builder
+ * per chunk and joins the partial builders with the same separator:
+ * <code>Do.with(strings).parallel().reduce(joiner, joiner, joiner)</code>.
+ * </p>
  */
 public class ReduceToStringBuilder implements
-        ReduceExpression<String, StringBuilder> {
+        ReduceExpression<String, StringBuilder>,
+        CombineExpression<StringBuilder>,
+        InitialValueExpression<StringBuilder> {
     private String separator;
 
     /**
@@ -29,4 +38,21 @@ public class ReduceToStringBuilder implements
         return builder;
     }
 
+    public StringBuilder combine(final StringBuilder left,
+            final StringBuilder right) {
+        if (right.length() == 0) {
+            return left;
+        }
+        if (this.separator != null && left.length() > 0) {
+            left.append(this.separator);
+        }
+        left.append(right);
+
+        return left;
+    }
+
+    public StringBuilder initialValue() {
+        return new StringBuilder();
+    }
+
 }
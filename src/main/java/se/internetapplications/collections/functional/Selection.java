@@ -0,0 +1,117 @@
+package se.internetapplications.collections.functional;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The elements of a random access list matching a filter, stored as a
+ * compressed bitmap of their positions rather than as a copy of the
+ * elements. Selections over the same source can be intersected, united and
+ * subtracted without touching the elements, and are only materialized when
+ * needed.
+ * 
+ * <pre>
+ * Do&lt;Product, Product&gt; catalog = Do.with(products);
+ * Selection&lt;Product&gt; hits = catalog.where(inStock).and(catalog.where(red))
+ *         .andNot(catalog.where(discontinued));
+ * List&lt;Product&gt; page = Do.with(hits).limit(20).toList();
+ * </pre>
+ * 
+ * A selection is a read-only view of the source. Iterating it returns the
+ * selected elements in source order, reading the source at that time.
+ * 
+ * @see Do#where(Do.BooleanExpression)
+ */
+public final class Selection<E> extends AbstractCollection<E> {
+
+    private final List<E> source;
+
+    private final Bitmap positions;
+
+    Selection(final List<E> source, final Bitmap positions) {
+        this.source = source;
+        this.positions = positions;
+    }
+
+    /**
+     * @return the elements selected by both this and <code>other</code>.
+     */
+    public Selection<E> and(final Selection<E> other) {
+        return new Selection<E>(this.source, this.positions.and(sameSource(
+                other).positions));
+    }
+
+    /**
+     * @return the elements selected by this or <code>other</code>.
+     */
+    public Selection<E> or(final Selection<E> other) {
+        return new Selection<E>(this.source, this.positions.or(sameSource(
+                other).positions));
+    }
+
+    /**
+     * @return the elements selected by this but not by <code>other</code>.
+     */
+    public Selection<E> andNot(final Selection<E> other) {
+        return new Selection<E>(this.source, this.positions
+                .andNot(sameSource(other).positions));
+    }
+
+    /**
+     * @return <code>true</code> if the element at <code>position</code> in
+     *         the source is selected.
+     */
+    public boolean isSelected(final int position) {
+        return this.positions.contains(position);
+    }
+
+    /**
+     * Copies the selected elements into a new list.
+     */
+    public Do<E, E> materialize() {
+        List<E> result = new ArrayList<E>(size());
+        for (int i = this.positions.next(0); i >= 0; i = this.positions
+                .next(i + 1)) {
+            result.add(this.source.get(i));
+        }
+        return Do.with(result);
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next = Selection.this.positions.next(0);
+
+            public boolean hasNext() {
+                return this.next >= 0;
+            }
+
+            public E next() {
+                if (this.next < 0) {
+                    throw new NoSuchElementException();
+                }
+                E element = Selection.this.source.get(this.next);
+                this.next = Selection.this.positions.next(this.next + 1);
+                return element;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int size() {
+        return this.positions.cardinality();
+    }
+
+    private Selection<E> sameSource(final Selection<E> other) {
+        if (other.source != this.source) {
+            throw new IllegalArgumentException(
+                    "Selections must be made from the same source");
+        }
+        return other;
+    }
+}
@@ -0,0 +1,102 @@
+package se.internetapplications.collections.functional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * Sorted index on a key of the elements of a <code>Do</code>, finding the
+ * elements with a given key, or with keys in a range, in logarithmic time.
+ * 
+ * <pre>
+ * SortedIndex&lt;Long, Event&gt; byTime = events.sortedIndex(timestamp);
+ * Do&lt;Event, Event&gt; lastMinute = byTime.select(now - 60000, now);
+ * </pre>
+ * 
+ * @see Do#sortedIndex(MapExpression)
+ * @see Do#sortedIndex(MapExpression, Comparator)
+ */
+public final class SortedIndex<K, E> extends Index<K, E> {
+
+    SortedIndex(final Collection<E> source, final MapExpression<E, K> key,
+            final Comparator<? super K> comparator) {
+        super(source, key, new TreeMap<K, List<E>>(comparator));
+        rebuild();
+    }
+
+    /**
+     * @return the first element with the given key or <code>null</code> if
+     *         there is none.
+     */
+    public E detect(final K key) {
+        List<E> elements = get(key);
+        return elements == null ? null : elements.get(0);
+    }
+
+    /**
+     * @return all elements with the given key, in encounter order.
+     */
+    public Do<E, E> select(final K key) {
+        return Do.with(copy(get(key)));
+    }
+
+    /**
+     * @return all elements with keys from <code>from</code> (inclusive) to
+     *         <code>to</code> (exclusive), ordered by key.
+     */
+    public Do<E, E> select(final K from, final K to) {
+        return Do.with(flatten(navigable().subMap(from, true, to, false)));
+    }
+
+    /**
+     * @return all elements with keys greater than or equal to
+     *         <code>from</code>, ordered by key.
+     */
+    public Do<E, E> selectFrom(final K from) {
+        return Do.with(flatten(navigable().tailMap(from, true)));
+    }
+
+    /**
+     * @return all elements with keys less than <code>to</code>, ordered by
+     *         key.
+     */
+    public Do<E, E> selectBelow(final K to) {
+        return Do.with(flatten(navigable().headMap(to, false)));
+    }
+
+    /**
+     * @return the first element with the smallest key or <code>null</code>
+     *         if the index is empty.
+     */
+    public E min() {
+        Map.Entry<K, List<E>> entry = navigable().firstEntry();
+        return entry == null ? null : entry.getValue().get(0);
+    }
+
+    /**
+     * @return the first element with the largest key or <code>null</code>
+     *         if the index is empty.
+     */
+    public E max() {
+        Map.Entry<K, List<E>> entry = navigable().lastEntry();
+        return entry == null ? null : entry.getValue().get(0);
+    }
+
+    private NavigableMap<K, List<E>> navigable() {
+        return (NavigableMap<K, List<E>>) entries();
+    }
+
+    private static <E> List<E> flatten(final Map<?, List<E>> entries) {
+        List<E> result = new ArrayList<E>();
+        for (List<E> elements : entries.values()) {
+            result.addAll(elements);
+        }
+        return result;
+    }
+}
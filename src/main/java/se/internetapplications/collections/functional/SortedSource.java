@@ -0,0 +1,161 @@
+package se.internetapplications.collections.functional;
+
+import java.util.Comparator;
+import java.util.List;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * A random access list known to be sorted by a key. Range selections,
+ * lookups of the first element above a threshold and min/max are answered
+ * by binary search, and range results are views of the source rather than
+ * copies.
+ * 
+ * <pre>
+ * SortedSource&lt;Long, Event&gt; byTime = Do.with(events).assumeSortedBy(timestamp);
+ * Do&lt;Event, Event&gt; window = byTime.select(start, end);
+ * </pre>
+ * 
+ * The order is not verified. Results are undefined if the source is not
+ * sorted by the key, and views are invalidated by structural changes to the
+ * source in the same way as <code>List.subList</code>.
+ * 
+ * @see Do#assumeSortedBy(MapExpression)
+ * @see Do#assumeSorted(Comparator)
+ */
+public final class SortedSource<K, E> {
+
+    private final List<E> source;
+
+    private final MapExpression<E, K> key;
+
+    private final Comparator<? super K> comparator;
+
+    SortedSource(final List<E> source, final MapExpression<E, K> key,
+            final Comparator<? super K> comparator) {
+        this.source = source;
+        this.key = key;
+        this.comparator = comparator;
+    }
+
+    /**
+     * @return a view of the elements with keys from <code>from</code>
+     *         (inclusive) to <code>to</code> (exclusive).
+     */
+    public Do<E, E> select(final K from, final K to) {
+        int start = lowerBound(from);
+        return view(start, Math.max(start, lowerBound(to)));
+    }
+
+    /**
+     * @return a view of the elements with keys from <code>from</code> to
+     *         <code>to</code>, both inclusive.
+     */
+    public Do<E, E> selectClosed(final K from, final K to) {
+        int start = lowerBound(from);
+        return view(start, Math.max(start, upperBound(to)));
+    }
+
+    /**
+     * @return a view of the elements with keys greater than or equal to
+     *         <code>from</code>.
+     */
+    public Do<E, E> selectFrom(final K from) {
+        return view(lowerBound(from), this.source.size());
+    }
+
+    /**
+     * @return a view of the elements with keys less than <code>to</code>.
+     */
+    public Do<E, E> selectBelow(final K to) {
+        return view(0, lowerBound(to));
+    }
+
+    /**
+     * @return the first element with a key greater than
+     *         <code>threshold</code> or <code>null</code> if there is none.
+     */
+    public E detectAbove(final K threshold) {
+        return elementAt(upperBound(threshold));
+    }
+
+    /**
+     * @return the first element with a key greater than or equal to
+     *         <code>threshold</code> or <code>null</code> if there is none.
+     */
+    public E detectAtLeast(final K threshold) {
+        return elementAt(lowerBound(threshold));
+    }
+
+    /**
+     * @return the element with the smallest key or <code>null</code> if the
+     *         source is empty.
+     */
+    public E min() {
+        return elementAt(0);
+    }
+
+    /**
+     * @return the element with the largest key or <code>null</code> if the
+     *         source is empty.
+     */
+    public E max() {
+        return elementAt(this.source.size() - 1);
+    }
+
+    /**
+     * @return index of the first element with a key not less than
+     *         <code>key</code>.
+     */
+    private int lowerBound(final K key) {
+        int low = 0;
+        int high = this.source.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first element with a key greater than
+     *         <code>key</code>.
+     */
+    private int upperBound(final K key) {
+        int low = 0;
+        int high = this.source.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(final int index, final K key) {
+        K current = this.key.transform(this.source.get(index));
+        if (this.comparator == null) {
+            return ((Comparable<? super K>) current).compareTo(key);
+        }
+        return this.comparator.compare(current, key);
+    }
+
+    private E elementAt(final int index) {
+        if (index < 0 || index >= this.source.size()) {
+            return null;
+        }
+        return this.source.get(index);
+    }
+
+    private Do<E, E> view(final int from, final int to) {
+        return Do.with(this.source.subList(from, to));
+    }
+}
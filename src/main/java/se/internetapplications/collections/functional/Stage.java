@@ -0,0 +1,231 @@
+package se.internetapplications.collections.functional;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+/**
+ * A single deferred step in a lazy <code>Do</code> chain. Stages are applied
+ * one element at a time so that a whole chain runs in one loop over the
+ * source.
+ */
+abstract class Stage {
+
+    /**
+     * Returned by {@link #apply(Object)} when the element should be dropped.
+     */
+    static final Object REJECTED = new Object();
+
+    /**
+     * Returned by {@link #apply(Object)} when the element is dropped and no
+     * further elements can pass.
+     */
+    static final Object END = new Object();
+
+    /**
+     * An empty chain of stages, passing every element on unchanged.
+     */
+    static final Stage[] NONE = new Stage[0];
+
+    /**
+     * @return the element to pass on to the next stage, {@link #REJECTED}
+     *         if the element is dropped or {@link #END} if it is dropped and
+     *         the traversal should stop.
+     */
+    abstract Object apply(Object element);
+
+    /**
+     * @return <code>true</code> if the stage keeps state between elements.
+     *         Such stages depend on encounter order, cannot be split over
+     *         several threads and must be copied for each traversal.
+     */
+    boolean stateful() {
+        return false;
+    }
+
+    /**
+     * @return a copy with fresh state for a new traversal.
+     */
+    Stage copy() {
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if no further elements can pass, so the
+     *         traversal can stop without reading any more elements.
+     */
+    boolean exhausted() {
+        return false;
+    }
+
+    /**
+     * Runs <code>element</code> through all stages in order.
+     * 
+     * @return the resulting element, {@link #REJECTED} if any stage dropped
+     *         it or {@link #END} if the traversal should stop.
+     */
+    static Object applyAll(final Stage[] stages, final Object element) {
+        Object current = element;
+        for (int i = 0; i < stages.length; i++) {
+            current = stages[i].apply(current);
+            if (current == REJECTED || current == END) {
+                return current;
+            }
+        }
+        return current;
+    }
+
+    static boolean stateful(final Stage[] stages) {
+        for (int i = 0; i < stages.length; i++) {
+            if (stages[i].stateful()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean exhausted(final Stage[] stages) {
+        for (int i = 0; i < stages.length; i++) {
+            if (stages[i].exhausted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return stages ready for a new traversal, copying stateful ones.
+     */
+    static Stage[] fresh(final Stage[] stages) {
+        if (!stateful(stages)) {
+            return stages;
+        }
+        Stage[] fresh = new Stage[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            fresh[i] = stages[i].copy();
+        }
+        return fresh;
+    }
+
+    static <E> Stage select(final BooleanExpression<E> expression) {
+        return new Stage() {
+            @SuppressWarnings("unchecked")
+            Object apply(final Object element) {
+                return expression.predicate((E) element) ? element : REJECTED;
+            }
+        };
+    }
+
+    static <E> Stage reject(final BooleanExpression<E> expression) {
+        return new Stage() {
+            @SuppressWarnings("unchecked")
+            Object apply(final Object element) {
+                return expression.predicate((E) element) ? REJECTED : element;
+            }
+        };
+    }
+
+    /**
+     * Passes on the first <code>limit</code> elements.
+     */
+    static Stage limit(final int limit) {
+        return new Limit(limit);
+    }
+
+    /**
+     * Passes on elements until the first one not matching the expression.
+     */
+    static <E> Stage takeWhile(final BooleanExpression<E> expression) {
+        return new Stage() {
+            @SuppressWarnings("unchecked")
+            Object apply(final Object element) {
+                return expression.predicate((E) element) ? element : END;
+            }
+
+            /**
+             * Which elements pass depends on those before them, so the stage
+             * must not be split over several chunks.
+             */
+            boolean stateful() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Drops elements until the first one not matching the expression.
+     */
+    static <E> Stage dropWhile(final BooleanExpression<E> expression) {
+        return new DropWhile<E>(expression);
+    }
+
+    /**
+     * Same semantics as the eager map operations: <code>null</code> results
+     * are dropped.
+     */
+    static <E, S> Stage map(final MapExpression<E, S> expression) {
+        return new Stage() {
+            @SuppressWarnings("unchecked")
+            Object apply(final Object element) {
+                S s = expression.transform((E) element);
+                return s == null ? REJECTED : s;
+            }
+        };
+    }
+
+    private static final class Limit extends Stage {
+        private final int limit;
+
+        private int count;
+
+        Limit(final int limit) {
+            this.limit = limit;
+        }
+
+        Object apply(final Object element) {
+            if (this.count >= this.limit) {
+                return END;
+            }
+            this.count++;
+            return element;
+        }
+
+        boolean stateful() {
+            return true;
+        }
+
+        Stage copy() {
+            return new Limit(this.limit);
+        }
+
+        boolean exhausted() {
+            return this.count >= this.limit;
+        }
+    }
+
+    private static final class DropWhile<E> extends Stage {
+        private final BooleanExpression<E> expression;
+
+        private boolean dropping = true;
+
+        DropWhile(final BooleanExpression<E> expression) {
+            this.expression = expression;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object apply(final Object element) {
+            if (this.dropping && this.expression.predicate((E) element)) {
+                return REJECTED;
+            }
+            this.dropping = false;
+            return element;
+        }
+
+        boolean stateful() {
+            return true;
+        }
+
+        Stage copy() {
+            return new DropWhile<E>(this.expression);
+        }
+    }
+}
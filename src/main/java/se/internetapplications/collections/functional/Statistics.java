@@ -0,0 +1,127 @@
+package se.internetapplications.collections.functional;
+
+/**
+ * Count, sum, minimum, maximum, mean and variance of a set of numbers,
+ * computed in a single pass. The mean and variance are updated with
+ * Welford's algorithm, which stays accurate when values are large compared
+ * to their spread. Partial statistics, e.g. from parallel chunks, can be
+ * merged.
+ * 
+ * @see ReduceToStatistics
+ */
+public final class Statistics {
+
+    private long count;
+
+    private double sum;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private double mean;
+
+    /**
+     * Sum of squared differences from the current mean.
+     */
+    private double m2;
+
+    public void accept(final double value) {
+        this.count++;
+        this.sum += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+
+        double delta = value - this.mean;
+        this.mean += delta / this.count;
+        this.m2 += delta * (value - this.mean);
+    }
+
+    /**
+     * Adds all values counted by <code>other</code> to these statistics.
+     */
+    public void merge(final Statistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (this.count == 0) {
+            this.count = other.count;
+            this.sum = other.sum;
+            this.min = other.min;
+            this.max = other.max;
+            this.mean = other.mean;
+            this.m2 = other.m2;
+            return;
+        }
+
+        long count = this.count + other.count;
+        double delta = other.mean - this.mean;
+        this.mean += delta * other.count / count;
+        this.m2 += other.m2 + delta * delta * this.count * other.count
+                / count;
+        this.count = count;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getSum() {
+        return this.sum;
+    }
+
+    /**
+     * @return smallest value, or <code>NaN</code> if there are no values.
+     */
+    public double getMin() {
+        return this.count == 0 ? Double.NaN : this.min;
+    }
+
+    /**
+     * @return largest value, or <code>NaN</code> if there are no values.
+     */
+    public double getMax() {
+        return this.count == 0 ? Double.NaN : this.max;
+    }
+
+    /**
+     * @return arithmetic mean, or <code>NaN</code> if there are no values.
+     */
+    public double getMean() {
+        return this.count == 0 ? Double.NaN : this.mean;
+    }
+
+    /**
+     * @return population variance, or <code>NaN</code> if there are no
+     *         values.
+     */
+    public double getVariance() {
+        return this.count == 0 ? Double.NaN : this.m2 / this.count;
+    }
+
+    /**
+     * @return sample variance, or <code>NaN</code> if there are less than
+     *         two values.
+     */
+    public double getSampleVariance() {
+        return this.count < 2 ? Double.NaN : this.m2 / (this.count - 1);
+    }
+
+    /**
+     * @return population standard deviation, or <code>NaN</code> if there
+     *         are no values.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public String toString() {
+        return "Statistics[count=" + this.count + ", sum=" + this.sum
+                + ", min=" + getMin() + ", max=" + getMax() + ", mean="
+                + getMean() + ", variance=" + getVariance() + "]";
+    }
+}
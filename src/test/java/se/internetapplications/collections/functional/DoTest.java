@@ -6,14 +6,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.CombineExpression;
 import se.internetapplications.collections.functional.Do.MapExpression;
 import se.internetapplications.collections.functional.Do.ReduceExpression;
 
@@ -28,6 +34,10 @@ public class DoTest {
 
     private MapExpression<String, Integer> parsedInts;
 
+    private CombineExpression<Integer> sum;
+
+    private MapExpression<String, String> idPrefix;
+
     @Before
     public void setUp() {
         this.list = Arrays.asList("a", "b", "c", "d", "e");
@@ -52,6 +62,18 @@ public class DoTest {
 
         };
 
+        this.sum = new CombineExpression<Integer>() {
+            public Integer combine(final Integer left, final Integer right) {
+                return left + right;
+            }
+        };
+
+        this.idPrefix = new MapExpression<String, String>() {
+            public String transform(String element) {
+                return element.substring(0, element.indexOf(':'));
+            }
+        };
+
         this.parsedInts = new MapExpression<String, Integer>() {
             public Integer transform(String element) {
                 return Integer.parseInt(element);
@@ -105,6 +127,243 @@ public class DoTest {
         assertCollectionEquality(Arrays.asList("a", "c", "d", "e"), actual);
     }
 
+    @Test
+    public void selectLargerThanSample() {
+        Collection<Integer> actual = Do.with(numbers(1000)).select(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element >= 500;
+                    }
+                }).trimToSize();
+        assertEquals(500, actual.size());
+        assertEquals(Integer.valueOf(500), actual.iterator().next());
+    }
+
+    @Test
+    public void partition() {
+        final int[] calls = new int[1];
+        Partition<String> actual = Do.with(list).partition(
+                new BooleanExpression<String>() {
+                    public boolean predicate(String element) {
+                        calls[0]++;
+                        return element.compareTo("c") < 0;
+                    }
+                });
+        assertEquals(Arrays.asList("a", "b"), actual.selected().toList());
+        assertEquals(Arrays.asList("c", "d", "e"), actual.rejected().toList());
+        assertEquals(5, calls[0]);
+    }
+
+    @Test
+    public void partitionBy() {
+        Map<Integer, Do<String, String>> actual = Do.with("a", "bb", "c",
+                "dd", "eee").partitionBy(new MapExpression<String, Integer>() {
+            public Integer transform(String element) {
+                return element.length();
+            }
+        });
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(actual
+                .keySet()));
+        assertEquals(Arrays.asList("a", "c"), actual.get(1).toList());
+        assertEquals(Arrays.asList("bb", "dd"), actual.get(2).toList());
+        assertEquals(Arrays.asList("eee"), actual.get(3).toList());
+    }
+
+    @Test
+    public void groupBy() {
+        MapExpression<Integer, Integer> modThree = new MapExpression<Integer, Integer>() {
+            public Integer transform(Integer element) {
+                return element % 3;
+            }
+        };
+        Map<Integer, Integer> sums = Do.with(numbers(10)).groupBy(modThree)
+                .withInitialValue(0).reduce(toASum);
+        assertEquals(Arrays.asList(0, 1, 2), new ArrayList<Integer>(sums
+                .keySet()));
+        assertEquals(Integer.valueOf(0 + 3 + 6 + 9), sums.get(0));
+        assertEquals(Integer.valueOf(1 + 4 + 7), sums.get(1));
+        assertEquals(Integer.valueOf(2 + 5 + 8), sums.get(2));
+
+        Map<Integer, Do<Integer, Integer>> groups = Do.with(numbers(5))
+                .groupBy(modThree).toMap();
+        assertEquals(Arrays.asList(1, 4), groups.get(1).toList());
+    }
+
+    @Test
+    public void groupByMutableAccumulators() {
+        ReduceToStringBuilder joiner = new ReduceToStringBuilder(",");
+        Map<Integer, StringBuilder> actual = Do.with("a", "bb", "c", "dd")
+                .mapTo(StringBuilder.class).groupBy(
+                        new MapExpression<String, Integer>() {
+                            public Integer transform(String element) {
+                                return element.length();
+                            }
+                        }).reduce(joiner, joiner);
+        assertEquals("a,c", actual.get(1).toString());
+        assertEquals("bb,dd", actual.get(2).toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void groupByReduceNoStartingValue() {
+        Do.with(numbers(3)).groupBy(new MapExpression<Integer, Integer>() {
+            public Integer transform(Integer element) {
+                return element;
+            }
+        }).reduce(toASum);
+    }
+
+    @Test
+    public void join() {
+        Do<String, String> customers = Do.with("1:alice", "2:bob", "3:carol");
+        Do<String, String> orders = Do.with("1:book", "3:pen", "1:lamp",
+                "4:cup");
+
+        List<Pair<String, String>> actual = orders.join(customers, idPrefix,
+                idPrefix).toList();
+        assertEquals(Arrays.asList(
+                new Pair<String, String>("1:book", "1:alice"),
+                new Pair<String, String>("3:pen", "3:carol"),
+                new Pair<String, String>("1:lamp", "1:alice")), actual);
+
+        List<Pair<String, String>> reversed = customers.join(orders,
+                idPrefix, idPrefix).toList();
+        assertEquals(3, reversed.size());
+        assertEquals(new Pair<String, String>("1:alice", "1:book"), reversed
+                .get(0));
+    }
+
+    @Test
+    public void leftOuterJoin() {
+        List<Pair<String, String>> actual = Do.with("1:book", "4:cup")
+                .leftOuterJoin(Do.with("1:alice"), idPrefix, idPrefix)
+                .toList();
+        assertEquals(Arrays.asList(
+                new Pair<String, String>("1:book", "1:alice"),
+                new Pair<String, String>("4:cup", null)), actual);
+    }
+
+    @Test
+    public void semiAndAntiJoin() {
+        Do<String, String> customers = Do.with("1:alice", "1:alf", "2:bob");
+        Do<String, String> orders = Do.with("1:book", "3:pen", "2:lamp");
+        assertEquals(Arrays.asList("1:book", "2:lamp"), orders.semiJoin(
+                customers, idPrefix, idPrefix).toList());
+        assertEquals(Arrays.asList("3:pen"), orders.antiJoin(customers,
+                idPrefix, idPrefix).toList());
+    }
+
+    @Test
+    public void sorted() {
+        assertEquals(Arrays.asList("a", "b", "c"), Do.with("c", "a", "b")
+                .sorted(natural()).toList());
+    }
+
+    @Test
+    public void topAndBottomK() {
+        List<Integer> input = Arrays.asList(5, 1, 9, 3, 7, 9, 2);
+        assertEquals(Arrays.asList(9, 9, 7), Do.with(input).topK(3, natural())
+                .toList());
+        assertEquals(Arrays.asList(1, 2), Do.with(input).bottomK(2, natural())
+                .toList());
+        assertEquals(0, Do.with(input).topK(0, natural()).size());
+        assertEquals(7, Do.with(input).topK(10, natural()).size());
+    }
+
+    @Test
+    public void parallelTopK() {
+        List<Integer> input = new ArrayList<Integer>(numbers(100000));
+        Collections.shuffle(input);
+        assertEquals(Arrays.asList(99999, 99998, 99997), Do.with(input)
+                .parallel().topK(3, natural()).toList());
+        assertEquals(Arrays.asList(0, 1), Do.with(input).parallel().lazy()
+                .bottomK(2, natural()).toList());
+    }
+
+    @Test
+    public void fanOut() {
+        final int[] traversed = new int[1];
+        Do<Integer, Integer> source = Do.with(numbers(10)).lazy().mapTo(
+                new MapExpression<Integer, Integer>() {
+                    public Integer transform(Integer element) {
+                        traversed[0]++;
+                        return element;
+                    }
+                });
+        FanOut<Integer> fanOut = source.fanOut();
+        FanOut.Result<List<Integer>> large = fanOut.select(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element >= 7;
+                    }
+                });
+        FanOut.Result<Integer> total = fanOut.reduce(0, toASum);
+        FanOut.Result<Integer> firstOdd = fanOut.detect(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element % 2 == 1;
+                    }
+                });
+        fanOut.run();
+
+        assertEquals(10, traversed[0]);
+        assertEquals(Arrays.asList(7, 8, 9), large.get());
+        assertEquals(Integer.valueOf(45), total.get());
+        assertEquals(Integer.valueOf(1), firstOdd.get());
+    }
+
+    @Test
+    public void fanOutStopsWhenAllDone() {
+        final int[] traversed = new int[1];
+        FanOut<Integer> fanOut = Do.with(numbers(100)).lazy().mapTo(
+                new MapExpression<Integer, Integer>() {
+                    public Integer transform(Integer element) {
+                        traversed[0]++;
+                        return element;
+                    }
+                }).fanOut();
+        FanOut.Result<Integer> five = fanOut.detect(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element == 5;
+                    }
+                });
+        try {
+            five.get();
+            fail("Should've thrown IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        fanOut.run();
+        assertEquals(Integer.valueOf(5), five.get());
+        assertEquals(6, traversed[0]);
+    }
+
+    @Test
+    public void rejectElementFirstOccurrences() {
+        Collection<String> input = Arrays.asList("a", "b", "a", "c", "a",
+                "b");
+        Collection<String> actual = Do.with(input).rejectElement("a", "b",
+                "a", "x");
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<String>(
+                actual));
+    }
+
+    @Test
+    public void rejectAllElements() {
+        Collection<String> input = Arrays.asList("a", "b", "a", "c", null);
+        Collection<String> actual = Do.with(input).rejectAllElements("a",
+                null);
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<String>(actual));
+    }
+
+    @Test
+    public void rejectAllElementsInSet() {
+        Set<String> blacklist = new HashSet<String>(Arrays.asList("b", "d"));
+        Collection<String> actual = Do.with(list).lazy().rejectAllElements(
+                blacklist).toList();
+        assertEquals(Arrays.asList("a", "c", "e"), actual);
+    }
+
     @Test
     public void unique() {
         List<String> bag = new LinkedList<String>(list);
@@ -115,6 +374,96 @@ public class DoTest {
         assertCollectionEquality(Arrays.asList("a", "b", "c", "d", "e"), actual);
     }
     
+    @Test
+    public void toListIsArrayBacked() {
+        List<String> actual = Do.with(list).toList();
+        assertTrue(actual instanceof ArrayList<?>);
+        assertEquals(list, actual);
+        assertTrue(Do.with(list).toLinkedList() instanceof LinkedList<?>);
+    }
+
+    @Test
+    public void toImmutableList() {
+        List<String> actual = Do.with(list).toImmutableList();
+        assertEquals(list, actual);
+        try {
+            actual.add("f");
+            fail("Should've thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(Collections.singletonList("a"), Do.with("a")
+                .toImmutableList());
+    }
+
+    @Test
+    public void toImmutableSet() {
+        Set<String> actual = Do.with("a", "b", "a").toImmutableSet();
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), actual);
+        try {
+            actual.remove("a");
+            fail("Should've thrown UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void uniqueKeepsEncounterOrder() {
+        assertEquals(Arrays.asList("c", "a", null, "b"), Do.with("c", "a",
+                "c", null, "b", "a", null).unique().toList());
+    }
+
+    @Test
+    public void uniqueIsSetBacked() {
+        Do<String, String> unique = Do.with("c", "a", "c", "b").unique();
+        assertTrue(unique.contains("a"));
+        assertFalse(unique.add("c"));
+        assertEquals(Arrays.asList("c", "a", "b"), unique.toList());
+        assertEquals(Arrays.asList("c", "a", "b"), Do.with("c", "a", "c", "b")
+                .lazy().unique().toList());
+    }
+
+    @Test
+    public void lazyUniqueBy() {
+        List<Integer> input = new ArrayList<Integer>(numbers(100000));
+        input.addAll(numbers(100000));
+        List<Integer> actual = Do.with(input).lazy().select(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element % 2 == 0;
+                    }
+                }).uniqueBy(new MapExpression<Integer, Integer>() {
+            public Integer transform(Integer element) {
+                return element / 4;
+            }
+        }).toList();
+        assertEquals(25000, actual.size());
+        assertEquals(Integer.valueOf(4), actual.get(1));
+    }
+
+    @Test
+    public void uniqueBy() {
+        List<String> actual = Do.with("1:book", "2:pen", "1:lamp", "3:cup",
+                "2:mug").uniqueBy(idPrefix).toList();
+        assertEquals(Arrays.asList("1:book", "2:pen", "3:cup"), actual);
+    }
+
+    @Test
+    public void uniqueByManyKeys() {
+        List<Integer> input = new ArrayList<Integer>(numbers(100000));
+        input.addAll(numbers(100000));
+        List<Integer> actual = Do.with(input).uniqueBy(
+                new MapExpression<Integer, Integer>() {
+                    public Integer transform(Integer element) {
+                        return element / 2;
+                    }
+                }).toList();
+        assertEquals(50000, actual.size());
+        assertEquals(Integer.valueOf(2), actual.get(1));
+        assertEquals(Integer.valueOf(99998), actual.get(49999));
+    }
+
     @Test
     public void collect() {
         Collection<String> actual = Do.with(list).collect(
@@ -156,6 +505,32 @@ public class DoTest {
         assertEquals(6, result.intValue());
     }
 
+    @Test
+    public void sourceTypes() {
+        BooleanExpression<String> notB = new BooleanExpression<String>() {
+            public boolean predicate(String element) {
+                return !element.equals("b");
+            }
+        };
+        List<String> expected = Arrays.asList("a", "c", "d", "e");
+        assertEquals(expected, Do.withArray("a", "b", "c", "d", "e").select(
+                notB).toList());
+        assertEquals(expected, Do.with(new ArrayList<String>(list)).select(
+                notB).toList());
+        assertEquals(expected, Do.with(new LinkedList<String>(list)).select(
+                notB).toList());
+        assertEquals("c", Do.with(new LinkedList<String>(list)).reject(notB)
+                .injectElement("c").detect(notB));
+    }
+
+    @Test
+    public void withArrayIsAView() {
+        String[] array = { "a", "b" };
+        Do<String, String> view = Do.withArray(array);
+        array[1] = "c";
+        assertEquals(Arrays.asList("a", "c"), view.toList());
+    }
+
     @Test
     public void sumArray() {
         Integer result = Do.with(1, 2, 3).withInitialValue(0).reduce(toASum);
@@ -227,6 +602,292 @@ public class DoTest {
 
     }
 
+    @Test
+    public void lazyChain() {
+        Collection<String> input = Arrays.asList("1", "2", "3", "4");
+        Integer result = Do.with(input).lazy().mapTo(parsedInts).reject(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element == 3;
+                    }
+                }).withInitialValue(0).reduce(toASum);
+        assertEquals(7, result.intValue());
+    }
+
+    @Test
+    public void reorderFiltersRunsSelectiveFilterFirst() {
+        final int[] calls = new int[1];
+        BooleanExpression<Integer> expensive = new BooleanExpression<Integer>() {
+            public boolean predicate(final Integer element) {
+                calls[0]++;
+                for (int i = 0; i < 10; i++) {
+                    Thread.yield();
+                }
+                return element >= 0;
+            }
+        };
+        BooleanExpression<Integer> selective = new BooleanExpression<Integer>() {
+            public boolean predicate(final Integer element) {
+                return element % 10 != 0;
+            }
+        };
+        List<Integer> source = numbers(100000);
+
+        List<Integer> result = Do.with(source).reorderFilters().select(
+                expensive).reject(selective).toList();
+
+        assertTrue("calls: " + calls[0], calls[0] < 30000);
+        assertEquals(10000, result.size());
+        assertEquals(Do.with(source).select(expensive).reject(selective)
+                .toList(), result);
+    }
+
+    @Test
+    public void reorderFiltersKeepsMapsInPlace() {
+        MapExpression<Integer, Integer> half = new MapExpression<Integer, Integer>() {
+            public Integer transform(final Integer element) {
+                return element / 2;
+            }
+        };
+        BooleanExpression<Integer> even = new BooleanExpression<Integer>() {
+            public boolean predicate(final Integer element) {
+                return element % 2 == 0;
+            }
+        };
+        List<Integer> source = numbers(5000);
+        assertEquals(Do.with(source).select(even).mapTo(half).reject(even)
+                .toList(), Do.with(source).reorderFilters().select(even)
+                .mapTo(half).reject(even).toList());
+    }
+
+    @Test
+    public void lazyIsDeferredAndFused() {
+        final List<String> calls = new ArrayList<String>();
+        Do<String, String> pipeline = Do.with(list).lazy().select(
+                new BooleanExpression<String>() {
+                    public boolean predicate(String element) {
+                        calls.add("select " + element);
+                        return !element.equals("b");
+                    }
+                }).mapTo(new MapExpression<String, String>() {
+            public String transform(String element) {
+                calls.add("map " + element);
+                return element.toUpperCase();
+            }
+        });
+        assertTrue(calls.isEmpty());
+
+        assertEquals("A", pipeline.iterator().next());
+        assertEquals(Arrays.asList("select a", "map a"), calls);
+
+        calls.clear();
+        assertCollectionEquality(Arrays.asList("A", "C", "D", "E"),
+                pipeline.toList());
+        assertEquals(9, calls.size());
+        assertEquals("select b", calls.get(2));
+        assertEquals("select c", calls.get(3));
+    }
+
+    @Test
+    public void lazyDetect() {
+        final List<String> visited = new ArrayList<String>();
+        String result = Do.with(list).lazy().mapTo(
+                new MapExpression<String, String>() {
+                    public String transform(String element) {
+                        visited.add(element);
+                        return element.toUpperCase();
+                    }
+                }).detect(new BooleanExpression<String>() {
+            public boolean predicate(String element) {
+                return element.equals("B");
+            }
+        });
+        assertEquals("B", result);
+        assertEquals(Arrays.asList("a", "b"), visited);
+    }
+
+    @Test
+    public void matches() {
+        BooleanExpression<String> isB = new BooleanExpression<String>() {
+            public boolean predicate(String element) {
+                return element.equals("b");
+            }
+        };
+        assertTrue(Do.with(list).anyMatch(isB));
+        assertFalse(Do.with(list).allMatch(isB));
+        assertFalse(Do.with(list).noneMatch(isB));
+        assertTrue(Do.with("b", "b").allMatch(isB));
+        assertTrue(Do.with(new LinkedList<String>()).allMatch(isB));
+        assertTrue(Do.with("a").noneMatch(isB));
+    }
+
+    @Test
+    public void limit() {
+        assertEquals(Arrays.asList("a", "b"), Do.with(list).limit(2).toList());
+        assertEquals(list, Do.with(list).limit(10).toList());
+        assertEquals(Arrays.asList("a"), Do.with(new HashSet<String>(
+                Arrays.asList("a"))).limit(3).toList());
+    }
+
+    @Test
+    public void lazyLimitStopsScanning() {
+        final List<Integer> visited = new ArrayList<Integer>();
+        Do<Integer, Integer> firstEven = Do.with(numbers(100)).lazy().select(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        visited.add(element);
+                        return element % 2 == 0;
+                    }
+                }).limit(3);
+
+        assertEquals(Arrays.asList(0, 2, 4), firstEven.toList());
+        assertEquals(5, visited.size());
+
+        visited.clear();
+        assertEquals(Arrays.asList(0, 2, 4), firstEven.toList());
+        assertEquals(5, visited.size());
+        assertEquals(0, Do.with(list).lazy().limit(0).toList().size());
+    }
+
+    @Test
+    public void takeAndDropWhile() {
+        BooleanExpression<Integer> small = new BooleanExpression<Integer>() {
+            public boolean predicate(Integer element) {
+                return element < 3;
+            }
+        };
+        List<Integer> input = Arrays.asList(1, 2, 3, 1, 4);
+        assertEquals(Arrays.asList(1, 2), Do.with(input).takeWhile(small)
+                .toList());
+        assertEquals(Arrays.asList(3, 1, 4), Do.with(input).dropWhile(small)
+                .toList());
+        Do<Integer, Integer> lazy = Do.with(input).lazy().dropWhile(small);
+        assertEquals(Arrays.asList(3, 1, 4), lazy.toList());
+        assertEquals(Arrays.asList(3, 1, 4), lazy.toList());
+    }
+
+    @Test
+    public void eager() {
+        final int[] calls = new int[1];
+        Do<String, String> result = Do.with(list).lazy().collect(
+                new MapExpression<String, String>() {
+                    public String transform(String element) {
+                        calls[0]++;
+                        return element.toUpperCase();
+                    }
+                }).eager();
+        assertEquals(5, result.size());
+        assertEquals(5, result.toSet().size());
+        assertEquals(5, calls[0]);
+    }
+
+    @Test
+    public void parallelKeepsEncounterOrder() {
+        List<Integer> input = numbers(100000);
+        Collection<Integer> actual = Do.with(input).parallel().select(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element % 3 == 0;
+                    }
+                }).mapTo(new MapExpression<Integer, Integer>() {
+            public Integer transform(Integer element) {
+                return element / 3;
+            }
+        });
+        assertEquals(33334, actual.size());
+        assertCollectionEquality(numbers(33334), actual);
+    }
+
+    @Test
+    public void parallelLazy() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Integer> input = numbers(10000);
+            List<Integer> actual = Do.with(input).parallel(pool).lazy().reject(
+                    new BooleanExpression<Integer>() {
+                        public boolean predicate(Integer element) {
+                            return element >= 5000;
+                        }
+                    }).toList();
+            assertCollectionEquality(numbers(5000), actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelTakeWhile() {
+        BooleanExpression<Integer> small = new BooleanExpression<Integer>() {
+            public boolean predicate(Integer element) {
+                return element < 5;
+            }
+        };
+        List<Integer> input = numbers(10000);
+        assertEquals(numbers(5), Do.with(input).parallel().lazy().takeWhile(
+                small).toList());
+        assertEquals(10, Do.with(input).parallel().lazy().takeWhile(small)
+                .withInitialValue(0).reduce(toASum, sum).intValue());
+        assertEquals(Arrays.asList(4, 3), Do.with(input).parallel().lazy()
+                .takeWhile(small).topK(2, DoTest.<Integer> natural()).toList());
+    }
+
+    @Test
+    public void parallelSequentialSource() {
+        List<Integer> input = new LinkedList<Integer>(numbers(5000));
+        Integer result = Do.with(input).parallel().reject(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(Integer element) {
+                        return element > 3;
+                    }
+                }).withInitialValue(0).reduce(toASum);
+        assertEquals(6, result.intValue());
+    }
+
+    @Test
+    public void parallelReduceWithCombiner() {
+        Integer result = Do.with(numbers(10000)).parallel().mapTo(
+                Integer.class).withInitialValue(0).reduce(toASum, sum);
+        assertEquals(49995000, result.intValue());
+    }
+
+    @Test
+    public void parallelReduceWithInitialValueExpression() {
+        List<String> input = new ArrayList<String>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            input.add(Integer.toString(i));
+            expected.append(i == 0 ? "" : ",").append(i);
+        }
+        ReduceToStringBuilder joiner = new ReduceToStringBuilder(",");
+        StringBuilder actual = Do.with(input).parallel().mapTo(
+                StringBuilder.class).reduce(joiner, joiner, joiner);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void sequentialReduceWithCombiner() {
+        ReduceToStringBuilder joiner = new ReduceToStringBuilder(", ");
+        String actual = Do.with(list).mapTo(StringBuilder.class).reduce(
+                joiner, joiner, joiner).toString();
+        assertEquals("a, b, c, d, e", actual);
+    }
+
+    private static <T extends Comparable<T>> Comparator<T> natural() {
+        return new Comparator<T>() {
+            public int compare(T left, T right) {
+                return left.compareTo(right);
+            }
+        };
+    }
+
+    private List<Integer> numbers(final int count) {
+        List<Integer> numbers = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+
     private <T> void assertCollectionEquality(final Collection<T> expected,
             final Collection<T> actual) {
         Iterator<T> test = actual.iterator();
@@ -0,0 +1,106 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+public class IndexTest {
+
+    private final MapExpression<String, String> prefix = new MapExpression<String, String>() {
+        public String transform(final String element) {
+            return element.substring(0, element.indexOf(':'));
+        }
+    };
+
+    private final MapExpression<String, Integer> length = new MapExpression<String, Integer>() {
+        public Integer transform(final String element) {
+            return element.length();
+        }
+    };
+
+    private Do<String, String> strings;
+
+    @Before
+    public void setUp() {
+        strings = Do.with(new ArrayList<String>(Arrays.asList("a:1", "b:22",
+                "a:333", "c:4444")));
+    }
+
+    @Test
+    public void hashIndexFindsByKey() {
+        HashIndex<String, String> byPrefix = strings.hashIndex(prefix);
+        assertEquals("a:1", byPrefix.detect("a"));
+        assertEquals(Arrays.asList("a:1", "a:333"), byPrefix.select("a")
+                .toList());
+        assertNull(byPrefix.detect("x"));
+        assertTrue(byPrefix.select("x").isEmpty());
+        assertTrue(byPrefix.containsKey("c"));
+    }
+
+    @Test
+    public void sortedIndexFindsByRange() {
+        SortedIndex<Integer, String> byLength = strings.sortedIndex(length);
+        assertEquals("b:22", byLength.detect(4));
+        assertEquals(Arrays.asList("b:22", "a:333"), byLength.select(4, 6)
+                .toList());
+        assertEquals(Arrays.asList("a:333", "c:4444"), byLength.selectFrom(5)
+                .toList());
+        assertEquals(Arrays.asList("a:1"), byLength.selectBelow(4).toList());
+        assertEquals("a:1", byLength.min());
+        assertEquals("c:4444", byLength.max());
+
+        SortedIndex<Integer, String> reversed = strings.sortedIndex(length,
+                Collections.<Integer> reverseOrder());
+        assertEquals("c:4444", reversed.min());
+    }
+
+    @Test
+    public void indexesFollowChanges() {
+        HashIndex<String, String> byPrefix = strings.hashIndex(prefix);
+        SortedIndex<Integer, String> byLength = strings.sortedIndex(length);
+
+        strings.add("a:55555");
+        assertEquals(Arrays.asList("a:1", "a:333", "a:55555"), byPrefix
+                .select("a").toList());
+        assertEquals("a:55555", byLength.max());
+
+        strings.remove("a:1");
+        assertEquals("a:333", byPrefix.detect("a"));
+        assertEquals("b:22", byLength.min());
+
+        strings.removeAll(Arrays.asList("b:22", "c:4444"));
+        assertFalse(byPrefix.containsKey("b"));
+        assertEquals("a:333", byLength.min());
+
+        Iterator<String> iterator = strings.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(Arrays.asList("a:55555"), byPrefix.select("a").toList());
+
+        strings.addAll(Arrays.asList("d:1", "d:2"));
+        assertEquals(2, byPrefix.select("d").size());
+
+        strings.clear();
+        assertNull(byLength.min());
+        assertFalse(byPrefix.containsKey("a"));
+    }
+
+    @Test
+    public void rebuildAfterDirectChanges() {
+        List<String> list = new ArrayList<String>(Arrays.asList("a:1"));
+        HashIndex<String, String> byPrefix = Do.with(list).hashIndex(prefix);
+        list.add("b:2");
+        assertNull(byPrefix.detect("b"));
+        byPrefix.rebuild();
+        assertEquals("b:2", byPrefix.detect("b"));
+    }
+}
@@ -0,0 +1,181 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.DoubleDo.DoubleBooleanExpression;
+import se.internetapplications.collections.functional.DoubleDo.DoubleMapExpression;
+import se.internetapplications.collections.functional.DoubleDo.DoubleReduceExpression;
+import se.internetapplications.collections.functional.IntDo.IntBooleanExpression;
+import se.internetapplications.collections.functional.IntDo.IntMapExpression;
+import se.internetapplications.collections.functional.IntDo.IntReduceExpression;
+import se.internetapplications.collections.functional.LongDo.LongBooleanExpression;
+import se.internetapplications.collections.functional.LongDo.LongMapExpression;
+import se.internetapplications.collections.functional.LongDo.LongReduceExpression;
+
+public class IntDoTest {
+
+    private final IntBooleanExpression even = new IntBooleanExpression() {
+        public boolean predicate(final int element) {
+            return element % 2 == 0;
+        }
+    };
+
+    @Test
+    public void select() {
+        int[] actual = Do.withInts(1, 2, 3, 4, 5).select(even).toArray();
+        assertArrayEquals(new int[] { 2, 4 }, actual);
+    }
+
+    @Test
+    public void reject() {
+        int[] actual = Do.withInts(1, 2, 3, 4, 5).reject(even).toArray();
+        assertArrayEquals(new int[] { 1, 3, 5 }, actual);
+    }
+
+    @Test
+    public void map() {
+        int[] actual = Do.withInts(1, 2, 3).mapTo(new IntMapExpression() {
+            public int transform(final int element) {
+                return element * 10;
+            }
+        }).toArray();
+        assertArrayEquals(new int[] { 10, 20, 30 }, actual);
+    }
+
+    @Test
+    public void detect() {
+        assertEquals(Integer.valueOf(2), Do.withInts(1, 2, 3).detect(even));
+        assertNull(Do.withInts(1, 3).detect(even));
+    }
+
+    @Test
+    public void sum() {
+        assertEquals(6, Do.withInts(1, 2, 3, 4).select(even).sum());
+    }
+
+    @Test
+    public void sumDoesNotOverflow() {
+        assertEquals(3L * Integer.MAX_VALUE, Do.withInts(Integer.MAX_VALUE,
+                Integer.MAX_VALUE, Integer.MAX_VALUE).sum());
+    }
+
+    @Test
+    public void sparseSelectionIsCompacted() {
+        int[] values = new int[1000];
+        values[10] = 2;
+        IntDo selected = Do.withInts(values).reject(new IntBooleanExpression() {
+            public boolean predicate(final int element) {
+                return element == 0;
+            }
+        });
+        assertEquals(1, selected.size());
+        assertArrayEquals(new int[] { 2 }, selected.toArray());
+        assertEquals(1000, Do.withInts(values).select(even).size());
+    }
+
+    @Test
+    public void reduce() {
+        int actual = Do.withInts(1, 2, 3, 4).withInitialValue(1).reduce(
+                new IntReduceExpression() {
+                    public int reduce(final int accumulatedValue,
+                            final int element) {
+                        return accumulatedValue * element;
+                    }
+                });
+        assertEquals(24, actual);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void reduceNoStartingValue() {
+        Do.withInts(1, 2).reduce(new IntReduceExpression() {
+            public int reduce(final int accumulatedValue, final int element) {
+                return 0;
+            }
+        });
+    }
+
+    @Test
+    public void boxed() {
+        assertEquals(Arrays.asList(2, 4), Do.withInts(1, 2, 3, 4).select(even)
+                .boxed().toList());
+    }
+
+    @Test
+    public void primitiveVariants() {
+        assertEquals(6L, Do.withLongs(1L, 2L, 3L).sum());
+        assertEquals(1.5, Do.withDoubles(0.5, 1.0).sum(), 0.0);
+    }
+
+    @Test
+    public void longs() {
+        LongBooleanExpression large = new LongBooleanExpression() {
+            public boolean predicate(final long element) {
+                return element > Integer.MAX_VALUE;
+            }
+        };
+        LongDo values = Do.withLongs(1L, 1L << 40, 3L, 1L << 41);
+        assertArrayEquals(new long[] { 1L << 40, 1L << 41 }, values.select(
+                large).toArray());
+        assertArrayEquals(new long[] { 1L, 3L }, values.reject(large)
+                .toArray());
+        assertEquals(Long.valueOf(1L << 40), values.detect(large));
+        assertNull(Do.withLongs(1L).detect(large));
+
+        long actual = values.reject(large).mapTo(new LongMapExpression() {
+            public long transform(final long element) {
+                return element << 32;
+            }
+        }).withInitialValue(0L).reduce(new LongReduceExpression() {
+            public long reduce(final long accumulatedValue, final long element) {
+                return accumulatedValue + element;
+            }
+        });
+        assertEquals(4L << 32, actual);
+
+        Statistics statistics = values.select(large).statistics();
+        assertEquals(2, statistics.getCount());
+        assertEquals(1L << 41, statistics.getMax(), 0.0);
+        assertEquals(Arrays.asList(1L, 3L), values.reject(large).boxed()
+                .toList());
+    }
+
+    @Test
+    public void doubles() {
+        DoubleBooleanExpression negative = new DoubleBooleanExpression() {
+            public boolean predicate(final double element) {
+                return element < 0;
+            }
+        };
+        DoubleDo values = Do.withDoubles(-1.5, 2.0, -0.5, 4.0);
+        assertArrayEquals(new double[] { -1.5, -0.5 }, values
+                .select(negative).toArray(), 0.0);
+        assertArrayEquals(new double[] { 2.0, 4.0 }, values.reject(negative)
+                .toArray(), 0.0);
+        assertEquals(Double.valueOf(-1.5), values.detect(negative));
+        assertNull(Do.withDoubles(1.0).detect(negative));
+
+        double actual = values.reject(negative).mapTo(
+                new DoubleMapExpression() {
+                    public double transform(final double element) {
+                        return element / 2;
+                    }
+                }).withInitialValue(1.0).reduce(new DoubleReduceExpression() {
+            public double reduce(final double accumulatedValue,
+                    final double element) {
+                return accumulatedValue * element;
+            }
+        });
+        assertEquals(2.0, actual, 0.0);
+
+        Statistics statistics = values.statistics();
+        assertEquals(4, statistics.getCount());
+        assertEquals(1.0, statistics.getMean(), 1e-12);
+        assertEquals(-1.5, statistics.getMin(), 0.0);
+        assertEquals(Arrays.asList(2.0, 4.0), values.reject(negative).boxed()
+                .toList());
+    }
+}
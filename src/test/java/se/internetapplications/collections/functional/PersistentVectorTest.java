@@ -0,0 +1,71 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PersistentVectorTest {
+
+    @Test
+    public void plusKeepsOldVersions() {
+        PersistentVector<String> empty = PersistentVector.empty();
+        PersistentVector<String> one = empty.plus("a");
+        PersistentVector<String> two = one.plus("b");
+
+        assertEquals(0, empty.size());
+        assertEquals(Arrays.asList("a"), one);
+        assertEquals(Arrays.asList("a", "b"), two);
+    }
+
+    @Test
+    public void growsPastSeveralTrieLevels() {
+        List<Integer> expected = new ArrayList<Integer>();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        PersistentVector<Integer> snapshot = null;
+        for (int i = 0; i < 40000; i++) {
+            expected.add(i);
+            vector = vector.plus(i);
+            if (i == 1055) {
+                snapshot = vector;
+            }
+        }
+
+        assertEquals(expected, vector);
+        assertEquals(1056, snapshot.size());
+        assertEquals(expected.subList(0, 1056), snapshot);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfRange() {
+        PersistentVector.of(Arrays.asList("a")).get(1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        PersistentVector.of(Arrays.asList("a")).add("b");
+    }
+
+    @Test
+    public void injectElement() {
+        Do<String, String> original = Do.with("a", "b").persistent();
+        Do<String, String> injected = original.injectElement("c", "d");
+
+        assertEquals(Arrays.asList("a", "b"), original.toList());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), injected.toList());
+    }
+
+    @Test
+    public void rejectElementStaysPersistent() {
+        Do<String, String> original = Do.with("a", "b", "a").persistent();
+        Do<String, String> rejected = original.rejectElement("a");
+
+        assertEquals(Arrays.asList("b", "a"), rejected.toList());
+        assertEquals(Arrays.asList("b", "a", "c"), rejected.injectElement("c")
+                .toList());
+        assertEquals(3, original.size());
+    }
+}
@@ -0,0 +1,162 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+import se.internetapplications.collections.functional.Do.MapExpression;
+import se.internetapplications.collections.functional.Do.ReduceExpression;
+
+public class PreparedPipelineTest {
+
+    private final PreparedPipeline<String, Integer> lengths = PreparedPipeline
+            .of(String.class).reject(new BooleanExpression<String>() {
+                public boolean predicate(final String element) {
+                    return element.isEmpty();
+                }
+            }).mapTo(new MapExpression<String, Integer>() {
+                public Integer transform(final String element) {
+                    return element.length();
+                }
+            });
+
+    private final ReduceExpression<Integer, Integer> sum = new ReduceExpression<Integer, Integer>() {
+        public Integer reduce(final Integer accumulatedValue,
+                final Integer element) {
+            return accumulatedValue + element;
+        }
+    };
+
+    @Test
+    public void applyToManySources() {
+        assertEquals(Arrays.asList(1, 3), lengths.apply(
+                Arrays.asList("a", "", "abc")).toList());
+        assertEquals(Arrays.asList(2), lengths.apply(
+                new LinkedList<String>(Arrays.asList("", "ab"))).toList());
+        assertEquals(Integer.valueOf(6), lengths.apply(
+                Arrays.asList("a", "bb", "ccc")).withInitialValue(0).reduce(
+                sum));
+    }
+
+    @Test
+    public void pipelinesAreImmutable() {
+        PreparedPipeline<String, Integer> limited = lengths.limit(1);
+        List<String> input = Arrays.asList("a", "bb", "ccc");
+        assertEquals(Arrays.asList(1), limited.apply(input).toList());
+        assertEquals(Arrays.asList(1), limited.apply(input).toList());
+        assertEquals(3, lengths.apply(input).size());
+    }
+
+    @Test
+    public void applyLazily() {
+        List<String> input = new ArrayList<String>(Arrays.asList("a"));
+        Do<Integer, Integer> view = lengths.applyLazily(input);
+        input.add("bb");
+        assertEquals(Arrays.asList(1, 2), view.toList());
+    }
+
+    @Test
+    public void concurrentApply() throws Exception {
+        final PreparedPipeline<String, Integer> pipeline = lengths.dropWhile(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(final Integer element) {
+                        return element < 2;
+                    }
+                }).limit(2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<Future<List<Integer>>>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(new Callable<List<Integer>>() {
+                    public List<Integer> call() {
+                        return pipeline.apply(
+                                Arrays.asList("a", "bb", "c", "ddd", "ee"))
+                                .toList();
+                    }
+                }));
+            }
+            for (Future<List<Integer>> result : results) {
+                assertEquals(Arrays.asList(2, 1), result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void compiledPipelinesGiveSameResults() {
+        PreparedPipeline<String, Integer> compiled = lengths.compile();
+        assertTrue(compiled.isCompiled());
+        assertFalse(lengths.isCompiled());
+        List<String> input = Arrays.asList("a", "", "abc", "de");
+        assertEquals(lengths.apply(input).toList(), compiled.apply(input)
+                .toList());
+        assertEquals(Arrays.asList(2), compiled.apply(
+                new LinkedList<String>(Arrays.asList("", "ab"))).toList());
+        assertSame(compiled, compiled.compile());
+    }
+
+    @Test
+    public void compiledPipelinesHaveLoopClassesOfTheirOwn() {
+        Class<?> first = lengths.compile().loopClass();
+        Class<?> second = lengths.limit(1).takeWhile(
+                new BooleanExpression<Integer>() {
+                    public boolean predicate(final Integer element) {
+                        return true;
+                    }
+                }).compile().loopClass();
+        Class<?> third = PreparedPipeline.of(String.class).select(
+                new BooleanExpression<String>() {
+                    public boolean predicate(final String element) {
+                        return true;
+                    }
+                }).compile().loopClass();
+
+        assertNull(second);
+        assertEquals(FusedLoop.class.getName(), first.getName());
+        assertNotSame(FusedLoop.class, first);
+        assertNotSame(first, third);
+        assertNotSame(first.getClassLoader(), third.getClassLoader());
+    }
+
+    @Test
+    public void compiledMapDropsNull() {
+        PreparedPipeline<String, String> pipeline = PreparedPipeline.of(
+                String.class).mapTo(new MapExpression<String, String>() {
+            public String transform(final String element) {
+                return element.isEmpty() ? null : element.toUpperCase();
+            }
+        }).compile();
+        assertTrue(pipeline.isCompiled());
+        assertEquals(Arrays.asList("A", "B"), pipeline.apply(
+                Arrays.asList("a", "", "b")).toList());
+    }
+
+    @Test
+    public void statefulOrLongPipelinesAreNotCompiled() {
+        PreparedPipeline<String, Integer> limited = lengths.limit(1);
+        assertSame(limited, limited.compile());
+
+        PreparedPipeline<String, Integer> longer = lengths;
+        for (int i = 0; i < FusedLoop.SLOTS; i++) {
+            longer = longer.select(new BooleanExpression<Integer>() {
+                public boolean predicate(final Integer element) {
+                    return element > 0;
+                }
+            });
+        }
+        assertSame(longer, longer.compile());
+        assertEquals(Arrays.asList(1), longer.apply(Arrays.asList("a", ""))
+                .toList());
+    }
+}
@@ -0,0 +1,126 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.Do.BooleanExpression;
+
+public class SelectionTest {
+
+    private final List<Integer> numbers = numbers(300000);
+
+    private final Do<Integer, Integer> source = Do.with(numbers);
+
+    @Test
+    public void combinesLikeFilters() {
+        BooleanExpression<Integer> even = divisibleBy(2);
+        BooleanExpression<Integer> third = divisibleBy(3);
+        BooleanExpression<Integer> sparse = divisibleBy(10007);
+
+        assertEquals(source.select(even).select(third).toList(), source
+                .where(even).and(source.where(third)).materialize().toList());
+        assertEquals(source.select(even).select(sparse).toList(), source
+                .where(sparse).and(source.where(even)).materialize().toList());
+        assertEquals(source.reject(even).reject(sparse).toList(), source
+                .whereNot(even).andNot(source.where(sparse)).materialize()
+                .toList());
+        assertEquals(source.select(even).reject(third).toList(), source
+                .where(even).andNot(source.where(third)).materialize()
+                .toList());
+        assertEquals(source.select(sparse).toList(), source.where(sparse)
+                .andNot(source.where(even)).or(source.where(sparse))
+                .materialize().toList());
+    }
+
+    @Test
+    public void orKeepsSourceOrder() {
+        Selection<Integer> union = source.where(divisibleBy(5)).or(
+                source.where(divisibleBy(7)));
+        List<Integer> expected = source.select(new BooleanExpression<Integer>() {
+            public boolean predicate(final Integer element) {
+                return element % 5 == 0 || element % 7 == 0;
+            }
+        }).toList();
+        assertEquals(expected.size(), union.size());
+        assertEquals(expected, new ArrayList<Integer>(union));
+        assertTrue(union.isSelected(70000));
+        assertFalse(union.isSelected(70001));
+    }
+
+    @Test
+    public void randomSelections() {
+        final Random random = new Random(42);
+        final boolean[] left = new boolean[numbers.size()];
+        final boolean[] right = new boolean[numbers.size()];
+        for (int i = 0; i < left.length; i++) {
+            // dense and sparse regions alternate every 65536 positions
+            boolean dense = (i >>> 16) % 2 == 0;
+            left[i] = random.nextInt(dense ? 2 : 100) == 0;
+            right[i] = random.nextInt(dense ? 100 : 2) == 0;
+        }
+        Selection<Integer> a = source.where(flags(left));
+        Selection<Integer> b = source.where(flags(right));
+        List<Integer> and = new ArrayList<Integer>();
+        List<Integer> or = new ArrayList<Integer>();
+        List<Integer> andNot = new ArrayList<Integer>();
+        for (int i = 0; i < left.length; i++) {
+            if (left[i] && right[i]) {
+                and.add(i);
+            }
+            if (left[i] || right[i]) {
+                or.add(i);
+            }
+            if (left[i] && !right[i]) {
+                andNot.add(i);
+            }
+        }
+        assertEquals(and, a.and(b).materialize().toList());
+        assertEquals(or, a.or(b).materialize().toList());
+        assertEquals(andNot, a.andNot(b).materialize().toList());
+    }
+
+    @Test
+    public void emptySelection() {
+        Selection<Integer> none = source.where(divisibleBy(Integer.MAX_VALUE))
+                .andNot(source.where(divisibleBy(1)));
+        assertTrue(none.isEmpty());
+        assertFalse(none.iterator().hasNext());
+        assertTrue(none.materialize().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentSourcesCannotBeCombined() {
+        Do.with(Arrays.asList(1, 2)).where(divisibleBy(2)).and(
+                Do.with(Arrays.asList(1, 2)).where(divisibleBy(2)));
+    }
+
+    private static BooleanExpression<Integer> divisibleBy(final int divisor) {
+        return new BooleanExpression<Integer>() {
+            public boolean predicate(final Integer element) {
+                return element % divisor == 0;
+            }
+        };
+    }
+
+    private static BooleanExpression<Integer> flags(final boolean[] flags) {
+        return new BooleanExpression<Integer>() {
+            public boolean predicate(final Integer element) {
+                return flags[element];
+            }
+        };
+    }
+
+    private static List<Integer> numbers(final int count) {
+        List<Integer> numbers = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,113 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+public class SketchTest {
+
+    @Test
+    public void distinctCount() {
+        List<Integer> input = new ArrayList<Integer>();
+        for (int i = 0; i < 200000; i++) {
+            input.add(i % 50000);
+        }
+        ReduceToHyperLogLog<Integer> counter = new ReduceToHyperLogLog<Integer>();
+        long estimate = Do.with(input).mapTo(HyperLogLog.class).reduce(
+                counter, counter, counter).estimate();
+        assertEquals(50000, estimate, 50000 * 0.03);
+
+        long parallel = Do.with(input).mapTo(HyperLogLog.class).parallel()
+                .reduce(counter, counter, counter).estimate();
+        assertEquals(estimate, parallel);
+    }
+
+    @Test
+    public void distinctCountSmall() {
+        HyperLogLog sketch = Do.with("a", "b", "a", "c").mapTo(
+                HyperLogLog.class).withInitialValue(new HyperLogLog(10))
+                .reduce(new ReduceToHyperLogLog<String>(10));
+        assertEquals(3, sketch.estimate());
+    }
+
+    @Test
+    public void distinctCountByLongKey() {
+        List<String> input = new ArrayList<String>();
+        for (long i = 0; i < 20000; i++) {
+            input.add(Long.toString(i << 32 | i));
+        }
+        ReduceToHyperLogLog<String> counter = new ReduceToHyperLogLog<String>(
+                new MapExpression<String, Long>() {
+                    public Long transform(final String element) {
+                        return Long.valueOf(element);
+                    }
+                });
+        long estimate = Do.with(input).mapTo(HyperLogLog.class).reduce(
+                counter, counter, counter).estimate();
+        assertEquals(20000, estimate, 20000 * 0.03);
+
+        HyperLogLog boxed = new HyperLogLog(14);
+        for (long i = 0; i < 20000; i++) {
+            // every one of these has hashCode 0
+            boxed.offer(Long.valueOf(i << 32 | i));
+        }
+        assertEquals(20000, boxed.estimate(), 20000 * 0.03);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeDifferentPrecision() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    @Test
+    public void quantiles() {
+        List<Integer> input = new ArrayList<Integer>();
+        for (int i = 1; i <= 100000; i++) {
+            input.add(i);
+        }
+        Collections.shuffle(input);
+        ReduceToQuantileSketch<Integer> sketch = new ReduceToQuantileSketch<Integer>();
+
+        QuantileSketch sequential = Do.with(input).mapTo(QuantileSketch.class)
+                .reduce(sketch, sketch, sketch);
+        QuantileSketch parallel = Do.with(input).mapTo(QuantileSketch.class)
+                .parallel().reduce(sketch, sketch, sketch);
+
+        for (QuantileSketch actual : new QuantileSketch[] { sequential,
+                parallel }) {
+            assertEquals(100000, actual.getCount());
+            assertEquals(1.0, actual.quantile(0), 0.0);
+            assertEquals(100000.0, actual.quantile(1), 0.0);
+            assertEquals(50000, actual.quantile(0.5), 100000 * 0.03);
+            assertEquals(99000, actual.quantile(0.99), 100000 * 0.03);
+        }
+    }
+
+    @Test
+    public void quantileOfEmptySketch() {
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+
+    @Test
+    public void quantileSketchMemoryIsBounded() {
+        QuantileSketch sketch = new QuantileSketch(200);
+        QuantileSketch merged = new QuantileSketch(200);
+        for (int i = 0; i < 1000000; i++) {
+            sketch.offer(i);
+            if (i % 100000 == 99999) {
+                merged.merge(sketch);
+            }
+        }
+        assertTrue("allocated " + sketch.allocated(),
+                sketch.allocated() < 4 * 200);
+        assertTrue("allocated " + merged.allocated(),
+                merged.allocated() < 4 * 200);
+        assertEquals(500000, sketch.quantile(0.5), 1000000 * 0.02);
+    }
+}
@@ -0,0 +1,82 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+public class SortedSourceTest {
+
+    private final MapExpression<String, Integer> length = new MapExpression<String, Integer>() {
+        public Integer transform(final String element) {
+            return element.length();
+        }
+    };
+
+    private final List<String> words = Arrays.asList("a", "b", "cc", "dd",
+            "eee", "fffff");
+
+    @Test
+    public void rangeSelections() {
+        SortedSource<Integer, String> byLength = Do.with(words)
+                .assumeSortedBy(length);
+        assertEquals(Arrays.asList("cc", "dd", "eee"), byLength.select(2, 4)
+                .toList());
+        assertEquals(Arrays.asList("cc", "dd", "eee"), byLength.selectClosed(
+                2, 3).toList());
+        assertEquals(Arrays.asList("eee", "fffff"), byLength.selectFrom(3)
+                .toList());
+        assertEquals(Arrays.asList("a", "b"), byLength.selectBelow(2)
+                .toList());
+        assertTrue(byLength.select(4, 5).isEmpty());
+        assertTrue(byLength.select(5, 1).isEmpty());
+        assertEquals(Arrays.asList("fffff"), byLength.selectFrom(4).toList());
+    }
+
+    @Test
+    public void detectAndMinMax() {
+        SortedSource<Integer, String> byLength = Do.with(words)
+                .assumeSortedBy(length);
+        assertEquals("cc", byLength.detectAbove(1));
+        assertEquals("eee", byLength.detectAtLeast(3));
+        assertEquals("fffff", byLength.detectAtLeast(4));
+        assertNull(byLength.detectAbove(5));
+        assertEquals("a", byLength.min());
+        assertEquals("fffff", byLength.max());
+        assertNull(Do.with(new ArrayList<String>()).assumeSortedBy(length)
+                .max());
+    }
+
+    @Test
+    public void rangesAreViews() {
+        List<Integer> numbers = new ArrayList<Integer>(Arrays.asList(9, 7, 5,
+                3, 1));
+        SortedSource<Integer, Integer> sorted = Do.with(numbers).assumeSorted(
+                Collections.<Integer> reverseOrder());
+        assertEquals(Integer.valueOf(9), sorted.min());
+        assertEquals(Arrays.asList(7, 5), sorted.select(7, 3).toList());
+        numbers.set(1, 6);
+        assertEquals(Integer.valueOf(1), sorted.max());
+        assertEquals(Arrays.asList(6, 5), sorted.select(7, 3).toList());
+    }
+
+    @Test
+    public void otherSourcesAreCopied() {
+        List<String> descending = new LinkedList<String>(words);
+        Collections.reverse(descending);
+        SortedSource<Integer, String> byLength = Do.with(descending)
+                .assumeSortedBy(length, Collections.<Integer> reverseOrder());
+        assertEquals(Arrays.asList("b", "a"), byLength.selectFrom(1).toList());
+        assertEquals("fffff", byLength.min());
+        assertEquals(Arrays.asList("eee", "fffff"), Do.withArray(
+                words.toArray(new String[0])).assumeSortedBy(length)
+                .selectFrom(3).toList());
+    }
+}
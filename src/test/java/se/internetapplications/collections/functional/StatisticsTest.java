@@ -0,0 +1,63 @@
+package se.internetapplications.collections.functional;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.internetapplications.collections.functional.Do.MapExpression;
+
+public class StatisticsTest {
+
+    @Test
+    public void statistics() {
+        Statistics actual = Do.with(2, 4, 4, 4, 5, 5, 7, 9).mapTo(
+                Statistics.class).reduce(ReduceToStatistics.<Integer> ofNumbers(),
+                ReduceToStatistics.<Integer> ofNumbers(), ReduceToStatistics
+                        .<Integer> ofNumbers());
+        assertStatistics(actual);
+        assertStatistics(Do.withInts(2, 4, 4, 4, 5, 5, 7, 9).statistics());
+    }
+
+    @Test
+    public void parallelStatisticsWithExtractor() {
+        List<String> input = new ArrayList<String>();
+        for (int i = 0; i < 100000; i++) {
+            input.add(Integer.toString(1000000000 + i % 10));
+        }
+        ReduceToStatistics<String> stats = new ReduceToStatistics<String>(
+                new MapExpression<String, Long>() {
+                    public Long transform(final String element) {
+                        return Long.parseLong(element);
+                    }
+                });
+        Statistics actual = Do.with(input).mapTo(Statistics.class).parallel()
+                .reduce(stats, stats, stats);
+        assertEquals(100000, actual.getCount());
+        assertEquals(1000000000.0, actual.getMin(), 0.0);
+        assertEquals(1000000009.0, actual.getMax(), 0.0);
+        assertEquals(1000000004.5, actual.getMean(), 1e-4);
+        assertEquals(8.25, actual.getVariance(), 1e-4);
+    }
+
+    @Test
+    public void emptyStatistics() {
+        Statistics empty = new Statistics();
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMean()));
+        empty.merge(new Statistics());
+        assertTrue(Double.isNaN(empty.getMin()));
+    }
+
+    private void assertStatistics(final Statistics actual) {
+        assertEquals(8, actual.getCount());
+        assertEquals(40.0, actual.getSum(), 0.0);
+        assertEquals(2.0, actual.getMin(), 0.0);
+        assertEquals(9.0, actual.getMax(), 0.0);
+        assertEquals(5.0, actual.getMean(), 1e-12);
+        assertEquals(4.0, actual.getVariance(), 1e-12);
+        assertEquals(2.0, actual.getStandardDeviation(), 1e-12);
+    }
+}